@@ -0,0 +1,56 @@
+package cs224n.bench;
+
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.coref.Document;
+import cs224n.coref.Entity;
+import cs224n.corefsystems.BaselineCoreferenceSystem;
+import cs224n.corefsystems.CoreferenceSystem;
+import cs224n.util.MetaClass;
+import cs224n.util.Pair;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running a coreference system over the corpus, with gold mentions.
+ * The system is trained once on the same corpus; each operation runs coreference
+ * on every document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoreferenceBenchmark extends CorpusBenchmark {
+  @Param({"baseline", "BetterBaseline", "RuleBased"})
+  public String model;
+
+  private CoreferenceSystem system;
+
+  @Setup
+  public void setup() throws IOException {
+    loadCorpus();
+    //(create system)
+    String className = model.equalsIgnoreCase("baseline") ? BaselineCoreferenceSystem.class.getName() : model;
+    if(!className.contains(".")){ className = "cs224n.corefsystems." + className; }
+    system = MetaClass.create(className).createInstance();
+    //(train system)
+    List<Pair<Document,List<Entity>>> trainingData = new ArrayList<Pair<Document,List<Entity>>>(data.size());
+    for(SerializedDatum datum : data){
+      trainingData.add(Pair.make(prepare(datum).document, datum.goldClusters));
+    }
+    system.train(trainingData);
+  }
+
+  @Benchmark
+  public void runCoreference(Blackhole bh){
+    for(SerializedDatum datum : data){
+      bh.consume(system.runCoreference(prepare(datum).document));
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package cs224n.bench;
+
+import cs224n.assignments.CoreferenceTester;
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.util.IOUtils;
+import org.openjdk.jmh.annotations.Param;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The documents a benchmark runs over: either synthetic documents (the default),
+ * or the first few documents of the dev set (-p source=sample), read from
+ * -p dataPath=...
+ * The data path is also where baby_names.dat is read from, which some systems need.
+ */
+public abstract class CorpusBenchmark {
+  @Param({"synthetic"})
+  public String source;
+
+  @Param({"/afs/ir/class/cs224n/data/pa3/"})
+  public String dataPath;
+
+  @Param({"100"})
+  public int documents;
+
+  /** The encoded documents, as they would appear on disk */
+  protected List<String> encoded;
+  /** The decoded documents */
+  protected List<SerializedDatum> data;
+
+  /**
+   * Load the corpus; subclasses call this from their setup method.
+   */
+  protected void loadCorpus() throws IOException {
+    CoreferenceTester.dataPath = dataPath;
+    encoded = new ArrayList<String>(documents);
+    data = new ArrayList<SerializedDatum>(documents);
+    if(source.equalsIgnoreCase("synthetic")){
+      //(case: synthetic documents)
+      for(SerializedDatum datum : SyntheticCorpus.generate(documents, 42L)){
+        encoded.add(datum.encode());
+      }
+    } else if(source.equalsIgnoreCase("sample")){
+      //(case: documents from the dev set)
+      File dir = new File(dataPath + "/" + CoreferenceTester.conllData(CoreferenceTester.DataType.DEV));
+      for(File f : IOUtils.iterFilesRecursive(dir, ".dat")){
+        if(encoded.size() >= documents){ break; }
+        encoded.add(IOUtils.slurpFile(f));
+      }
+      if(encoded.isEmpty()){ throw new IllegalArgumentException("No documents found in " + dir); }
+    } else {
+      throw new IllegalArgumentException("Unknown corpus source: " + source);
+    }
+    //(decode every document from its encoding, as the tester would)
+    for(String doc : encoded){
+      data.add(SerializedDatum.decode(doc));
+    }
+  }
+
+  /**
+   * Get a document ready to run coreference on, as the tester does: set its gold
+   * mentions, and clear the coreference of any previous run (leaving the gold
+   * clusters intact).
+   * @param datum The document to prepare
+   * @return The same document
+   */
+  protected static SerializedDatum prepare(SerializedDatum datum){
+    return CoreferenceTester.prepare(datum, "gold");
+  }
+}
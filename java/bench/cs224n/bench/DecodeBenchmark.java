@@ -0,0 +1,91 @@
+package cs224n.bench;
+
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.coref.Document;
+import cs224n.coref.Mention;
+import cs224n.coref.Sentence;
+import cs224n.ling.Tree;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a corpus from its text encoding, piece by piece, and walking parse trees.
+ * Each operation is one pass over every item of the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark extends CorpusBenchmark {
+  private List<String> trees;
+  private List<String> sentences;
+  private List<String> mentions;
+  private List<Document> mentionDocuments;
+  private List<Tree<String>> parses;
+
+  @Setup
+  public void setup() throws IOException {
+    loadCorpus();
+    trees = new ArrayList<String>();
+    sentences = new ArrayList<String>();
+    mentions = new ArrayList<String>();
+    mentionDocuments = new ArrayList<Document>();
+    parses = new ArrayList<Tree<String>>();
+    for(SerializedDatum datum : data){
+      for(Sentence s : datum.document.sentences){
+        trees.add(s.parse.encode());
+        sentences.add(s.encode());
+        parses.add(s.parse);
+      }
+      for(Mention m : datum.goldMentions){
+        mentions.add(m.encode());
+        mentionDocuments.add(datum.document);
+      }
+    }
+  }
+
+  @Benchmark
+  public void treeDecode(Blackhole bh){
+    for(String tree : trees){
+      bh.consume(Tree.decode(tree));
+    }
+  }
+
+  @Benchmark
+  public void sentenceDecode(Blackhole bh){
+    for(String sentence : sentences){
+      bh.consume(Sentence.decode(sentence));
+    }
+  }
+
+  @Benchmark
+  public void mentionDecode(Blackhole bh){
+    for(int i=0; i<mentions.size(); i++){
+      bh.consume(Mention.decode(mentions.get(i), mentionDocuments.get(i)));
+    }
+  }
+
+  @Benchmark
+  public void datumDecode(Blackhole bh){
+    for(String doc : encoded){
+      bh.consume(SerializedDatum.decode(doc));
+    }
+  }
+
+  @Benchmark
+  public void pathToIndex(Blackhole bh){
+    for(Tree<String> parse : parses){
+      int length = parse.getYield().size();
+      for(int i=0; i<length; i++){
+        bh.consume(parse.pathToIndex(i));
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package cs224n.bench;
+
+import cs224n.assignments.CoreferenceTester.CoreferenceScore;
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.coref.ClusteredMention;
+import cs224n.corefsystems.BaselineCoreferenceSystem;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring (MUC and B^3) the output of the baseline system over the corpus.
+ * Each operation enters every document into a fresh score, and computes the F1s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoreBenchmark extends CorpusBenchmark {
+  private List<Collection<ClusteredMention>> guesses;
+
+  @Setup
+  public void setup() throws IOException {
+    loadCorpus();
+    BaselineCoreferenceSystem system = new BaselineCoreferenceSystem();
+    guesses = new ArrayList<Collection<ClusteredMention>>(data.size());
+    for(SerializedDatum datum : data){
+      guesses.add(system.runCoreference(prepare(datum).document));
+    }
+  }
+
+  @Benchmark
+  public void score(Blackhole bh){
+    CoreferenceScore score = new CoreferenceScore();
+    for(int i=0; i<data.size(); i++){
+      SerializedDatum datum = data.get(i);
+      score.enter(datum.document, guesses.get(i), datum.goldClusters);
+    }
+    bh.consume(score.f1MUC());
+    bh.consume(score.f1B3());
+  }
+}
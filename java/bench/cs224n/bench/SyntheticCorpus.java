@@ -0,0 +1,127 @@
+package cs224n.bench;
+
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.coref.Document;
+import cs224n.coref.Entity;
+import cs224n.coref.Mention;
+import cs224n.coref.Sentence;
+import cs224n.ling.Tree;
+
+import java.util.*;
+
+/**
+ * Generates small, deterministic documents for the benchmarks, so that they can
+ * be run without the CoNLL data.
+ * Each sentence is a flat conjunction of noun phrases (names, common nouns and
+ * pronouns); every noun phrase is a gold mention, and pronouns are usually
+ * clustered with an earlier entity.
+ */
+public class SyntheticCorpus {
+  private static final String[] NAMES = {"John","Mary","Acme","Paris","Bob","Sue","IBM","Obama"};
+  private static final String[] NOUNS = {"dog","cats","company","city","man","woman","report","cars"};
+  private static final String[] PRONOUNS = {"he","she","it","they","him","her"};
+
+  private SyntheticCorpus(){ }
+
+  /**
+   * Generate a corpus.
+   * @param numDocuments The number of documents to generate
+   * @param seed The random seed; the same seed always gives the same corpus
+   * @return The generated documents, with gold and predicted mentions both set to the gold mentions
+   */
+  public static List<SerializedDatum> generate(int numDocuments, long seed){
+    Random rand = new Random(seed);
+    List<SerializedDatum> data = new ArrayList<SerializedDatum>(numDocuments);
+    for(int d=0; d<numDocuments; d++){
+      data.add(generateDocument("synthetic/doc" + d, rand));
+    }
+    return data;
+  }
+
+  private static SerializedDatum generateDocument(String id, Random rand){
+    //--Sentences
+    int numSentences = 2 + rand.nextInt(12);
+    List<Sentence> sentences = new ArrayList<Sentence>();
+    //(sentence index, begin, end, head index; for each mention)
+    List<int[]> spans = new ArrayList<int[]>();
+    List<String> heads = new ArrayList<String>();
+    for(int s=0; s<numSentences; s++){
+      List<String> words = new ArrayList<String>();
+      List<String> pos = new ArrayList<String>();
+      List<String> ner = new ArrayList<String>();
+      List<String> speakers = new ArrayList<String>();
+      StringBuilder tree = new StringBuilder("(ROOT (S");
+      int numPhrases = 1 + rand.nextInt(6);
+      for(int k=0; k<numPhrases; k++){
+        int begin = words.size();
+        switch(rand.nextInt(3)){
+          case 0:
+            //(case: name)
+            String name = NAMES[rand.nextInt(NAMES.length)];
+            words.add(name); pos.add("NNP"); ner.add(rand.nextBoolean() ? "PERSON" : "ORGANIZATION");
+            tree.append(" (NP (NNP ").append(name).append("))");
+            heads.add(name);
+            break;
+          case 1:
+            //(case: common noun)
+            String noun = NOUNS[rand.nextInt(NOUNS.length)];
+            String tag = noun.endsWith("s") ? "NNS" : "NN";
+            words.add("the"); pos.add("DT"); ner.add("O");
+            words.add(noun); pos.add(tag); ner.add("O");
+            tree.append(" (NP (DT the) (").append(tag).append(" ").append(noun).append("))");
+            heads.add(noun);
+            break;
+          default:
+            //(case: pronoun)
+            String pronoun = PRONOUNS[rand.nextInt(PRONOUNS.length)];
+            words.add(pronoun); pos.add("PRP"); ner.add("O");
+            tree.append(" (NP (PRP ").append(pronoun).append("))");
+            heads.add(pronoun);
+            break;
+        }
+        spans.add(new int[]{ s, begin, words.size(), words.size() - 1 });
+        if(k < numPhrases - 1){
+          words.add("and"); pos.add("CC"); ner.add("O");
+          tree.append(" (CC and)");
+        }
+      }
+      words.add("."); pos.add("."); ner.add("O");
+      tree.append(" (. .)))");
+      for(int i=0; i<words.size(); i++){
+        speakers.add(rand.nextInt(10) == 0 ? "PER1" : "PER0");
+      }
+      sentences.add(new Sentence(words, new ArrayList<String>(words), pos, ner, speakers, Tree.decode(tree.toString())));
+    }
+    Document doc = new Document(id, sentences);
+    //--Mentions
+    List<Mention> mentions = new ArrayList<Mention>();
+    Map<String,List<Mention>> clusters = new LinkedHashMap<String,List<Mention>>();
+    for(int i=0; i<spans.size(); i++){
+      int[] span = spans.get(i);
+      Sentence sentence = sentences.get(span[0]);
+      //(find the noun phrase starting at the mention)
+      Tree<String> np = null;
+      int leaf = 0;
+      for(Tree<String> child : sentence.parse.getChildren().get(0).getChildren()){
+        if(leaf == span[1]){ np = child; break; }
+        leaf += child.getYield().size();
+      }
+      Mention mention = new Mention(doc, sentence, span[1], span[2], np, span[3]);
+      mentions.add(mention);
+      //(cluster by head word; pronouns usually refer back)
+      String key = heads.get(i);
+      if(Arrays.asList(PRONOUNS).contains(key) && !clusters.isEmpty() && rand.nextInt(3) > 0){
+        List<String> keys = new ArrayList<String>(clusters.keySet());
+        key = keys.get(rand.nextInt(keys.size()));
+      }
+      if(!clusters.containsKey(key)){ clusters.put(key, new ArrayList<Mention>()); }
+      clusters.get(key).add(mention);
+    }
+    //--Gold Clusters
+    List<Entity> entities = new ArrayList<Entity>();
+    for(List<Mention> cluster : clusters.values()){
+      entities.add(new Entity(mentions, cluster));
+    }
+    return new SerializedDatum(doc, mentions, new ArrayList<Mention>(mentions), entities);
+  }
+}
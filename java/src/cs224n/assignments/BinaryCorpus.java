@@ -0,0 +1,374 @@
+package cs224n.assignments;
+
+import cs224n.assignments.CoreferenceTester.SerializedDatum;
+import cs224n.coref.Document;
+import cs224n.coref.Entity;
+import cs224n.coref.Mention;
+import cs224n.coref.Sentence;
+import cs224n.ling.Tree;
+import cs224n.util.IOUtils;
+import cs224n.util.Indexer;
+import cs224n.util.StringUtils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * A compact binary encoding of a {@link SerializedDatum}, to avoid re-parsing the
+ * plaintext .dat files on every run.
+ *
+ * A file consists of a header (magic number and version), a string table, and then
+ * the document encoded entirely as integers indexing into that table:
+ * <ul>
+ *   <li>The document id, and for each sentence its length, the five token columns
+ *     (words, lemmas, POS tags, NER tags, speakers) and its parse tree</li>
+ *   <li>The gold and predicted mentions, as sentence index, span, head and parse fragment</li>
+ *   <li>The gold clusters, as indices into the gold mentions</li>
+ * </ul>
+ * Trees are written in pre-order as (label, number of children) pairs.
+ *
+ * Files are read through a memory-mapped FileChannel.
+ * To convert an existing plaintext data directory, run:
+ * <pre>
+ *   java -cp classes cs224n.assignments.BinaryCorpus -path /path/to/data
+ * </pre>
+ * which writes a .bin file next to every .dat file.
+ */
+public class BinaryCorpus {
+  private static final int MAGIC = 0x436f5266; // "CoRf"
+  private static final int VERSION = 1;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * The extension of a binary encoded datum
+   */
+  public static final String EXTENSION = ".bin";
+
+  private BinaryCorpus(){ }
+
+  //--------------
+  // WRITING
+  //--------------
+
+  /**
+   * Write a datum in the binary format
+   * @param datum The datum to write
+   * @param file The file to write to
+   * @throws IOException If the file could not be written
+   */
+  public static void write(SerializedDatum datum, File file) throws IOException {
+    //--Encode Body
+    Indexer<String> strings = new Indexer<String>();
+    ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+    DataOutputStream body = new DataOutputStream(bodyBytes);
+    //(document)
+    Document doc = datum.document;
+    body.writeInt(strings.addAndGetIndex(doc.id));
+    body.writeInt(doc.sentences.size());
+    for(Sentence s : doc.sentences){
+      body.writeInt(s.length());
+      writeColumn(body, strings, s.words);
+      writeColumn(body, strings, s.lemmas);
+      writeColumn(body, strings, s.posTags);
+      writeColumn(body, strings, s.nerTags);
+      writeColumn(body, strings, s.speakersOfWord);
+      writeTree(body, strings, s.parse);
+    }
+    //(mentions)
+    Map<Sentence,Integer> sentenceIndex = new IdentityHashMap<Sentence,Integer>();
+    for(int i=0; i<doc.sentences.size(); i++){ sentenceIndex.put(doc.sentences.get(i), i); }
+    writeMentions(body, strings, sentenceIndex, datum.goldMentions);
+    writeMentions(body, strings, sentenceIndex, datum.predictedMentions);
+    //(clusters)
+    Map<Mention,Integer> mentionIndex = new HashMap<Mention,Integer>();
+    for(int i=0; i<datum.goldMentions.size(); i++){ mentionIndex.put(datum.goldMentions.get(i), i); }
+    body.writeInt(datum.goldClusters.size());
+    for(Entity e : datum.goldClusters){
+      body.writeInt(e.size());
+      for(Mention m : e.mentions){
+        Integer index = mentionIndex.get(m);
+        if(index == null){ throw new IllegalStateException("Gold cluster contains a mention which is not a gold mention: " + m); }
+        body.writeInt(index);
+      }
+    }
+    body.flush();
+    //--Write File
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      //(header)
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      //(string table)
+      out.writeInt(strings.size());
+      for(String str : strings){
+        byte[] bytes = str.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+      //(body)
+      bodyBytes.writeTo(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void writeColumn(DataOutputStream out, Indexer<String> strings, List<String> column) throws IOException {
+    for(String term : column){
+      out.writeInt(strings.addAndGetIndex(term));
+    }
+  }
+
+  private static void writeTree(DataOutputStream out, Indexer<String> strings, Tree<String> tree) throws IOException {
+    //(count nodes)
+    List<Tree<String>> preOrder = tree.getPreOrderTraversal();
+    out.writeInt(preOrder.size());
+    //(write nodes)
+    for(Tree<String> node : preOrder){
+      out.writeInt(strings.addAndGetIndex(node.getLabel()));
+      out.writeInt(node.getChildren().size());
+    }
+  }
+
+  private static void writeMentions(DataOutputStream out, Indexer<String> strings,
+                                    Map<Sentence,Integer> sentenceIndex, List<Mention> mentions) throws IOException {
+    out.writeInt(mentions.size());
+    for(Mention m : mentions){
+      Integer sentence = sentenceIndex.get(m.sentence);
+      if(sentence == null){ throw new IllegalStateException("Mention is not in document: " + m); }
+      out.writeInt(sentence);
+      out.writeInt(m.beginIndexInclusive);
+      out.writeInt(m.endIndexExclusive);
+      out.writeInt(m.headWordIndex);
+      writeTree(out, strings, m.parse);
+    }
+  }
+
+  //--------------
+  // READING
+  //--------------
+
+  /**
+   * Read a binary encoded datum, through a memory mapped file
+   * @param file The file to read from
+   * @return The decoded datum
+   * @throws IOException If the file could not be read
+   */
+  public static SerializedDatum read(File file) throws IOException {
+    return read(map(file));
+  }
+
+  /**
+   * Memory map a binary encoded datum, and load its contents into memory
+   * @param file The file to map
+   * @return A read-only buffer over the whole file
+   * @throws IOException If the file could not be read
+   */
+  public static MappedByteBuffer map(File file) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      buffer.load();
+      return buffer;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Read a binary encoded datum from a buffer
+   * @param buffer The buffer, positioned at the start of the header
+   * @return The decoded datum
+   */
+  public static SerializedDatum read(ByteBuffer buffer){
+    //--Header
+    if(buffer.getInt() != MAGIC){ throw new IllegalStateException("Could not deserialize: not a binary corpus file"); }
+    int version = buffer.getInt();
+    if(version != VERSION){ throw new IllegalStateException("Could not deserialize: unknown version " + version + " (expected " + VERSION + ")"); }
+    //--String Table
+    String[] strings = new String[buffer.getInt()];
+    byte[] scratch = new byte[64];
+    for(int i=0; i<strings.length; i++){
+      int length = buffer.getInt();
+      if(length > scratch.length){ scratch = new byte[Math.max(length, 2*scratch.length)]; }
+      buffer.get(scratch, 0, length);
+      //(shared with every other sentence; see Sentence.intern())
+      strings[i] = Sentence.intern(new String(scratch, 0, length, UTF8));
+    }
+    //--Document
+    String id = strings[buffer.getInt()];
+    int numSentences = buffer.getInt();
+    List<Sentence> sentences = new ArrayList<Sentence>(numSentences);
+    for(int i=0; i<numSentences; i++){
+      int length = buffer.getInt();
+      List<String> words = readColumn(buffer, strings, length);
+      List<String> lemmas = readColumn(buffer, strings, length);
+      List<String> posTags = readColumn(buffer, strings, length);
+      List<String> nerTags = readColumn(buffer, strings, length);
+      List<String> speakers = readColumn(buffer, strings, length);
+      Tree<String> parse = readTree(buffer, strings);
+      sentences.add(new Sentence(words, lemmas, posTags, nerTags, speakers, parse));
+    }
+    Document doc = new Document(id, sentences);
+    //--Mentions
+    List<Mention> goldMentions = readMentions(buffer, strings, doc);
+    List<Mention> predictedMentions = readMentions(buffer, strings, doc);
+    //--Gold Clusters
+    int numClusters = buffer.getInt();
+    List<Entity> goldClusters = new ArrayList<Entity>(numClusters);
+    for(int i=0; i<numClusters; i++){
+      int size = buffer.getInt();
+      List<Mention> mentions = new ArrayList<Mention>(size);
+      for(int k=0; k<size; k++){
+        mentions.add(goldMentions.get(buffer.getInt()));
+      }
+      goldClusters.add(new Entity(goldMentions, mentions));
+    }
+    //--Return
+    if(buffer.hasRemaining()){ throw new IllegalStateException("Extra bytes in file: " + buffer.remaining()); }
+    return new SerializedDatum(doc, goldMentions, predictedMentions, goldClusters);
+  }
+
+  private static List<String> readColumn(ByteBuffer buffer, String[] strings, int length){
+    List<String> column = new ArrayList<String>(length);
+    for(int i=0; i<length; i++){
+      column.add(strings[buffer.getInt()]);
+    }
+    return column;
+  }
+
+  private static Tree<String> readTree(ByteBuffer buffer, String[] strings){
+    //--Read Nodes
+    int numNodes = buffer.getInt();
+    String[] labels = new String[numNodes];
+    int[] numChildren = new int[numNodes];
+    for(int i=0; i<numNodes; i++){
+      labels[i] = strings[buffer.getInt()];
+      numChildren[i] = buffer.getInt();
+    }
+    //--Build Tree
+    //(children are built before their parents, as in Tree.decode())
+    return buildTrees(labels, numChildren)[0];
+  }
+
+  @SuppressWarnings({"unchecked"})
+  private static Tree<String>[] buildTrees(String[] labels, int[] numChildren){
+    Tree<String>[] built = (Tree<String>[]) new Tree<?>[labels.length];
+    //(the end of each node's subtree, in pre-order)
+    int[] subtreeEnd = new int[labels.length];
+    for(int i=labels.length-1; i>=0; i--){
+      int end = i + 1;
+      for(int k=0; k<numChildren[i]; k++){ end = subtreeEnd[end]; }
+      subtreeEnd[i] = end;
+    }
+    //(post-order construction)
+    buildTree(0, labels, numChildren, subtreeEnd, built);
+    return built;
+  }
+
+  private static void buildTree(int root, String[] labels, int[] numChildren, int[] subtreeEnd, Tree<String>[] built){
+    //(explicit stack of (node, next child position) to avoid deep recursion)
+    int[] stack = new int[labels.length];
+    int[] nextChild = new int[labels.length];
+    int top = 0;
+    stack[0] = root;
+    nextChild[0] = root + 1;
+    while(top >= 0){
+      int node = stack[top];
+      if(numChildren[node] == 0){
+        built[node] = new Tree<String>(labels[node]);
+        top -= 1;
+      } else if(nextChild[top] < subtreeEnd[node]){
+        int child = nextChild[top];
+        nextChild[top] = subtreeEnd[child];
+        top += 1;
+        stack[top] = child;
+        nextChild[top] = child + 1;
+      } else {
+        List<Tree<String>> children = new ArrayList<Tree<String>>(numChildren[node]);
+        for(int child = node + 1; child < subtreeEnd[node]; child = subtreeEnd[child]){
+          children.add(built[child]);
+        }
+        built[node] = new Tree<String>(labels[node], children);
+        top -= 1;
+      }
+    }
+  }
+
+  private static List<Mention> readMentions(ByteBuffer buffer, String[] strings, Document doc){
+    int numMentions = buffer.getInt();
+    List<Mention> mentions = new ArrayList<Mention>(numMentions);
+    for(int i=0; i<numMentions; i++){
+      int sentenceIndex = buffer.getInt();
+      int begin = buffer.getInt();
+      int end = buffer.getInt();
+      int head = buffer.getInt();
+      Tree<String> parse = readTree(buffer, strings);
+      mentions.add(new Mention(doc, doc.sentences.get(sentenceIndex), begin, end, parse, head));
+    }
+    return mentions;
+  }
+
+  //--------------
+  // CONVERSION
+  //--------------
+
+  /**
+   * Convert every plaintext .dat file under the train, dev and test directories of
+   * a data path into the binary format.
+   * Usage: BinaryCorpus -path [data path] [-verify]
+   * @param args The command line arguments
+   */
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    String dataPath = props.getProperty("path", CoreferenceTester.dataPath);
+    boolean verify = Boolean.parseBoolean(props.getProperty("verify", "false"));
+    for(CoreferenceTester.DataType type : CoreferenceTester.DataType.values()){
+      File dir = new File(dataPath + "/" + CoreferenceTester.conllData(type));
+      if(!dir.isDirectory()){
+        System.out.println("Skipping " + dir + " (not a directory)");
+        continue;
+      }
+      System.out.print("Converting " + dir + "...");
+      int count = 0;
+      for(File plaintext : IOUtils.iterFilesRecursive(dir, ".dat")){
+        SerializedDatum datum = SerializedDatum.decode(IOUtils.slurpFile(plaintext));
+        String path = plaintext.getPath();
+        File binary = new File(path.substring(0, path.length() - ".dat".length()) + EXTENSION);
+        write(datum, binary);
+        if(verify){ verify(datum, read(binary), plaintext); }
+        count += 1;
+      }
+      System.out.println("done [" + count + " documents]");
+    }
+  }
+
+  private static void verify(SerializedDatum expected, SerializedDatum actual, File source){
+    if(!expected.document.encode().equals(actual.document.encode())
+        || !encodeMentions(expected.goldMentions).equals(encodeMentions(actual.goldMentions))
+        || !encodeMentions(expected.predictedMentions).equals(encodeMentions(actual.predictedMentions))
+        || !clusterIndices(expected).equals(clusterIndices(actual))){
+      throw new IllegalStateException("Binary encoding does not match plaintext: " + source);
+    }
+  }
+
+  private static List<String> encodeMentions(List<Mention> mentions){
+    List<String> encoded = new ArrayList<String>(mentions.size());
+    for(Mention m : mentions){ encoded.add(m.encode()); }
+    return encoded;
+  }
+
+  private static Set<Set<Integer>> clusterIndices(SerializedDatum datum){
+    Set<Set<Integer>> clusters = new HashSet<Set<Integer>>();
+    for(Entity e : datum.goldClusters){
+      Set<Integer> indices = new HashSet<Integer>();
+      for(Mention m : e.mentions){ indices.add(datum.goldMentions.indexOf(m)); }
+      clusters.add(indices);
+    }
+    return clusters;
+  }
+}
@@ -4,15 +4,26 @@ import cs224n.coref.ClusteredMention;
 import cs224n.coref.Document;
 import cs224n.coref.Entity;
 import cs224n.coref.Mention;
+import cs224n.coref.Sentence;
 import cs224n.corefsystems.BaselineCoreferenceSystem;
+import cs224n.corefsystems.CandidateLimits;
+import cs224n.corefsystems.ConfigurableTraining;
 import cs224n.corefsystems.CoreferenceSystem;
+import cs224n.corefsystems.FeatureCaching;
+import cs224n.corefsystems.MultithreadedTraining;
+import cs224n.corefsystems.PersistentModel;
+import cs224n.ling.Tree;
 import cs224n.util.*;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * The framework for running your coreference system.
@@ -28,7 +39,7 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
   private static final int NUM_TEST_EXAMPLES = 202;
   private static final int NUM_DEV_EXAMPLES = 63;
   private static final int MAX_TRAIN_EXAMPLES = 1600;
-  private static final boolean plaintext = true;
+  private static boolean plaintext = true;
 
   public static String dataPath = "/afs/ir/class/cs224n/data/pa3/";
 
@@ -129,9 +140,23 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
     }
   }
 
+  /**
+   * Accumulates MUC and B^3 scores over a stream of documents.
+   * The numerators and denominators of each metric decompose over documents,
+   * so each document is scored as it is entered and only the running sums
+   * are kept; the entities themselves are not retained.
+   */
   public static class CoreferenceScore {
-    private Collection<Entity> responses = new ArrayList<Entity>();
-    private Collection<Entity> keys = new ArrayList<Entity>();
+    //(MUC sufficient statistics)
+    private long mucPrecisionNumer = 0;
+    private long mucPrecisionDenom = 0;
+    private long mucRecallNumer = 0;
+    private long mucRecallDenom = 0;
+    //(B^3 sufficient statistics)
+    private double b3PrecisionNumer = 0.0;
+    private double b3PrecisionDenom = 0.0;
+    private double b3RecallNumer = 0.0;
+    private double b3RecallDenom = 0.0;
 
 
     public void report(){
@@ -146,16 +171,10 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
     }
 
     public double precisionMUC(){
-      double prec = precisionMUC(responses,keys);
-//      double check = recallMUC(keys, responses);
-//      if(Math.abs(prec-check) > 1e-6){ throw new IllegalStateException("MUC scores do not agree (not your fault)!"); }
-      return prec;
+      return mucScore(mucPrecisionNumer, mucPrecisionDenom);
     }
     public double recallMUC(){
-      double recall = precisionMUC(keys,responses);
-//      double check = recallMUC(responses, keys);
-//      if(Math.abs(recall-check) > 1e-6){ throw new IllegalStateException("MUC scores do not agree (not your fault)!"); }
-      return recall;
+      return mucScore(mucRecallNumer, mucRecallDenom);
     }
     public double f1MUC(){
       double prec = precisionMUC();
@@ -164,10 +183,10 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
     }
 
     public double precisionB3(){
-      return precisionB3(responses,keys);
+      return b3Score(b3PrecisionNumer, b3PrecisionDenom);
     }
     public double recallB3(){
-      return precisionB3(keys,responses);
+      return b3Score(b3RecallNumer, b3RecallDenom);
     }
     public double f1B3(){
       double prec = precisionB3();
@@ -175,6 +194,22 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
       return 2.0*(prec*rec)/(prec+rec);
     }
 
+    private static double mucScore(long numer, long denom){
+      if(numer > denom){ throw new IllegalStateException("MUC precision is broken (not your fault!)"); }
+      if(denom == 0){
+        if(numer != 0){ throw new IllegalStateException("MUC precisions is hella broken (not your fault!)"); }
+        return 1.0;
+      }
+      return ((double) numer) / ((double) denom);
+    }
+
+    private static double b3Score(double numer, double denom){
+      if(numer > denom || numer < 0 || denom <= 0){
+        throw new IllegalStateException("Bad B Cubed score about to be returned (not your fault)!");
+      }
+      return numer / denom;
+    }
+
     /**
      * Adapted from CoreNLP MUCScorer recall() method.
      * This should agree with precisionMUC().
@@ -209,9 +244,15 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
     }
 
     /**
-     * Adapted from the JavaNLP code
+     * Adapted from the JavaNLP code.
+     * Computes the B^3 precision numerator and denominator of a single document;
+     * swap the arguments to get recall.
+     * @param doc The document the clusters were taken from
+     * @param guesses The system's response clusters
+     * @param golds The true clusters
+     * @return A pair of (numerator, denominator), both zero if there are no guesses
      */
-    private static double precisionB3(Collection<Entity> guesses, Collection<Entity> golds){
+    private static double[] countsB3(Document doc, Collection<Entity> guesses, Collection<Entity> golds){
       //--Variables
       //(gold map)
       Map<Mention,Entity> goldMap = new HashMap<Mention,Entity>();
@@ -227,56 +268,44 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
           guessMap.put(m,guessEntity);
         }
       }
-      //(documents)
-      Set<Document> documents = new HashSet<Document>();
-      for(Entity e : guesses){
-        for(Mention m : e.mentions){
-          documents.add(m.doc);
-        }
-      }
+      //(documents with no guesses are not scored)
+      if(guessMap.isEmpty()){ return new double[]{ 0.0, 0.0 }; }
       //--Get Score
-      double numer = 0.0;
-      double denom = 0.0;
-      for(Document doc : documents){
-        double n = 0.0;
-        for(Mention m : doc.getMentions()){
-          //(variables)
-          double correct = 0.0;
-          double total = 0.0;
-          //(calculate something)
-          Entity guessEntity = guessMap.get(m);
-          if(guessEntity != null){
-            for(Mention guessMention : guessEntity.mentions){
-              if(goldMap.containsKey(guessMention) && goldMap.get(guessMention).equals(goldMap.get(m))){
-                correct += 1;
-              }
-              total += 1;
+      double n = 0.0;
+      for(Mention m : doc.getMentions()){
+        //(variables)
+        double correct = 0.0;
+        double total = 0.0;
+        //(calculate something)
+        Entity guessEntity = guessMap.get(m);
+        if(guessEntity != null){
+          for(Mention guessMention : guessEntity.mentions){
+            if(goldMap.containsKey(guessMention) && goldMap.get(guessMention).equals(goldMap.get(m))){
+              correct += 1;
             }
-          }
-          //(increment score)
-          if(total > 0){
-            n += correct / total;
-          } else if(correct != 0){
-            throw new IllegalStateException("Bad B Cubed score update (not your fault)!");
+            total += 1;
           }
         }
-        numer += n;
-        denom += (double) doc.getMentions().size();
-      }
-      //--Return Score
-      if(numer > denom || numer < 0 || denom <= 0){
-        throw new IllegalStateException("Bad B Cubed score about to be returned (not your fault)!");
+        //(increment score)
+        if(total > 0){
+          n += correct / total;
+        } else if(correct != 0){
+          throw new IllegalStateException("Bad B Cubed score update (not your fault)!");
+        }
       }
-      return numer / denom;
+      //--Return Counts
+      return new double[]{ n, (double) doc.getMentions().size() };
     }
 
     /**
      * As per Vilain 1995: "A Model Theoretic Coreference Scoring Scheme" (http://acl.ldc.upenn.edu/M/M95/M95-1005.pdf)
+     * Computes the MUC precision numerator and denominator of a single document;
+     * swap the arguments to get recall.
      * @param responses The system's guessed clusters
      * @param keys The true clusters
-     * @return A precision (between 0 and 1) score
+     * @return A pair of (numerator, denominator)
      */
-    private static double precisionMUC(Collection<Entity> responses, Collection<Entity> keys){
+    private static int[] countsMUC(Collection<Entity> responses, Collection<Entity> keys){
       //--Auxilliary Structures
       //(populate key map)
       Map<Mention,Entity> keyMap = new HashMap<Mention,Entity>();
@@ -286,8 +315,9 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
           keyMap.put(mention, gold);
         }
       }
-      //--Calculate Numerator
+      //--Calculate Numerator and Denominator
       int numer = 0;
+      int denom = 0;
       for(Entity response : responses){
         //(get partitions)
         Set<Entity> partitions = new HashSet<Entity>();
@@ -301,36 +331,57 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
             partitions.add(keyMap.get(m));
           }
         }
-        //(debug)
-        int numAccountedFor = 0;
-        for(Entity e : partitions) {
-          numAccountedFor += e.size();
-        }
-        //(increment numerator)
+        //(increment counts)
         int p = partitions.size() + extraPartitions;
         int S = response.size();
         numer += S - p;
-      }
-      //--Calculate Denominator
-      int denom = 0;
-      for(Entity response : responses){
-        //(increment denominator)
-        int S = response.size();
-        denom += S-1;
-      }
-      //--Error Checks
-      if(numer > denom){ throw new IllegalStateException("MUC precision is broken (not your fault!)"); }
-      if(denom == 0){
-        if(numer != 0){ throw new IllegalStateException("MUC precisions is hella broken (not your fault!)"); }
-        return 1.0;
+        denom += S - 1;
       }
       //--Return
-      return ((double) numer) / ((double) denom);
+      return new int[]{ numer, denom };
     }
 
+    /**
+     * Add the counts of another score (e.g., of a single document) to this one.
+     * @param other The score to add
+     * @return This score, for chaining
+     */
+    public CoreferenceScore add(CoreferenceScore other){
+      mucPrecisionNumer += other.mucPrecisionNumer;
+      mucPrecisionDenom += other.mucPrecisionDenom;
+      mucRecallNumer += other.mucRecallNumer;
+      mucRecallDenom += other.mucRecallDenom;
+      b3PrecisionNumer += other.b3PrecisionNumer;
+      b3PrecisionDenom += other.b3PrecisionDenom;
+      b3RecallNumer += other.b3RecallNumer;
+      b3RecallDenom += other.b3RecallDenom;
+      return this;
+    }
+
+    /**
+     * Score a single document, and add its counts to the running totals.
+     * Neither the guessed nor the gold entities are retained.
+     * @param doc The document being scored
+     * @param guess The system's clustering of the document's mentions
+     * @param gold The true clusters of the document
+     * @return This score, for chaining
+     */
     public CoreferenceScore enter(Document doc, Collection<ClusteredMention> guess, Collection<Entity> gold){
-      responses.addAll(Entity.fromMentions(guess));
-      keys.addAll(gold);
+      Collection<Entity> responses = Entity.fromMentions(guess);
+      //(MUC)
+      int[] muc = countsMUC(responses, gold);
+      mucPrecisionNumer += muc[0];
+      mucPrecisionDenom += muc[1];
+      muc = countsMUC(gold, responses);
+      mucRecallNumer += muc[0];
+      mucRecallDenom += muc[1];
+      //(B^3)
+      double[] b3 = countsB3(doc, responses, gold);
+      b3PrecisionNumer += b3[0];
+      b3PrecisionDenom += b3[1];
+      b3 = countsB3(doc, gold, responses);
+      b3RecallNumer += b3[0];
+      b3RecallDenom += b3[1];
       return this;
     }
   }
@@ -355,32 +406,147 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
   }
 
 
-  private SYS system;
+  private final List<SYS> systems;
+  private final BoundedCache<File,SerializedDatum> documents;
+  private final Profiler profiler;
+  //(per system timings)
+  private final long[] trainNanos;
+  private final AtomicLongArray coreferenceNanos;
+
+  private CoreferenceTester(List<SYS> systems, BoundedCache<File,SerializedDatum> documents, Profiler profiler){
+    this.systems = systems;
+    this.documents = documents;
+    this.profiler = profiler;
+    this.trainNanos = new long[systems.size()];
+    this.coreferenceNanos = new AtomicLongArray(systems.size());
+  }
+
+  /**
+   * Create a cache of decoded documents, shared between training, testing and debugging.
+   * Entries are weighed by the estimated heap size of the decoded document
+   * (see {@link CoreferenceTester#estimateBytes(SerializedDatum)}).
+   * @param maxDocuments The maximum number of documents to keep decoded
+   * @param maxMegabytes The maximum total (estimated) heap size of the documents to keep decoded
+   * @param profiler The profiler to record reading and decoding documents in
+   * @return A cache which decodes documents on a miss
+   */
+  public static BoundedCache<File,SerializedDatum> documentCache(int maxDocuments, long maxMegabytes, final Profiler profiler){
+    return new BoundedCache<File,SerializedDatum>(new BoundedCache.Loader<File,SerializedDatum>(){
+      public SerializedDatum load(File f) {
+        return getDatum(f, profiler);
+      }
+      public long weight(File f, SerializedDatum datum) {
+        return estimateBytes(datum);
+      }
+    }, maxDocuments, maxMegabytes * 1024L * 1024L);
+  }
+
+  /** Rough heap costs of the parts of a decoded document, in bytes */
+  private static final long BYTES_PER_SENTENCE = 256;
+  private static final long BYTES_PER_TOKEN = 64;
+  private static final long BYTES_PER_TREE_NODE = 96;
+  private static final long BYTES_PER_MENTION = 256;
+
+  /**
+   * Estimate the heap taken by a decoded document. This is several times the size
+   * of its file, since every token has its annotations and parse tree nodes, and
+   * every mention its own object; counting them is cheap next to decoding.
+   * @param datum The decoded document
+   * @return The estimated size of the document in memory, in bytes
+   */
+  private static long estimateBytes(SerializedDatum datum){
+    long tokens = 0;
+    long nodes = 0;
+    ArrayDeque<Tree<String>> stack = new ArrayDeque<Tree<String>>();
+    for(Sentence sentence : datum.document.sentences){
+      tokens += sentence.words.size();
+      stack.push(sentence.parse);
+      while(!stack.isEmpty()){
+        nodes += 1;
+        for(Tree<String> child : stack.pop().getChildren()){ stack.push(child); }
+      }
+    }
+    long mentions = datum.goldMentions.size() + datum.predictedMentions.size();
+    return BYTES_PER_SENTENCE * datum.document.sentences.size() + BYTES_PER_TOKEN * tokens
+        + BYTES_PER_TREE_NODE * nodes + BYTES_PER_MENTION * mentions;
+  }
+
+  /**
+   * Get a document from the cache, with the mentions of the given type set, and
+   * any coreference left over from a previous use of the document removed.
+   * @param f The serialized document
+   * @param mentionType The mention extractor to use (gold or predicted)
+   * @return The decoded document
+   */
+  private SerializedDatum checkout(File f, String mentionType){
+    return prepare(documents.get(f), mentionType);
+  }
+
+  /**
+   * Set the mentions of the given type on a decoded document, and remove any
+   * coreference left over from a previous use of the document.
+   * @param datum The decoded document
+   * @param mentionType The mention extractor to use (gold or predicted)
+   * @return The same document
+   */
+  public static SerializedDatum prepare(SerializedDatum datum, String mentionType){
+    //(get mentions)
+    List<Mention> mentions = null;
+    if(mentionType.equalsIgnoreCase("gold")){
+      mentions = datum.goldMentions;
+    } else if(mentionType.equalsIgnoreCase("predicted")) {
+      mentions = datum.predictedMentions;
+    } else {
+      throw new IllegalArgumentException("Unknown mention extractor: " + mentionType);
+    }
+    //(reset coreference, without taking mentions out of the gold clusters)
+    for(Mention m : datum.goldMentions){ m.removeCoreference(datum.goldClusters); }
+    for(Mention m : datum.predictedMentions){ m.removeCoreference(datum.goldClusters); }
+    //(set mentions)
+    datum.document.setMentions(mentions);
+    return datum;
+  }
 
-  private CoreferenceTester(SYS system){
-    this.system = system;
+  /**
+   * Iterate over decoded documents, decoding the next few on background threads
+   * while the caller runs coreference on the current one.
+   * The number of documents decoded ahead is given by the <code>prefetch</code> property.
+   * @param files The serialized documents, in order
+   * @param props The properties to run with (prefetch)
+   * @return An iterator over the decoded documents, in the order of the files
+   */
+  private PrefetchingIterator<File,SerializedDatum> prefetch(List<File> files, Properties props){
+    int depth = Integer.parseInt(props.getProperty("prefetch", "4"));
+    return new PrefetchingIterator<File,SerializedDatum>(files.iterator(), new PrefetchingIterator.Loader<File,SerializedDatum>(){
+      public SerializedDatum load(File f) {
+        return documents.get(f);
+      }
+    }, depth, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * The model file of a system: the given path if there is only one system, and
+   * otherwise the path with the name of the system's class appended.
+   * @param path The path given as the saveModel or loadModel property
+   * @param system The index of the system
+   * @return The file to save the system's model to, or load it from
+   */
+  private File modelFile(String path, int system){
+    if(systems.size() == 1){ return new File(path); }
+    return new File(path + "." + systems.get(system).getClass().getSimpleName());
   }
 
-  public CoreferenceScore train(final File[] data, final Properties props){
+  public List<CoreferenceScore> train(final File[] data, final Properties props){
     //--Create Data
     //(get properties)
     final String mentionType = props.getProperty("mentionExtractor", "gold");
-    //(convert data)
-    Collection<Pair<Document, List<Entity>>> dataToPass = new WeakReferenceList<Pair<Document,List<Entity>>>(new WeakReferenceList.RefreshFunction<Pair<Document,List<Entity>>>(){
+    //(convert data; the time spent reading documents is not counted against the system)
+    final AtomicLong checkoutNanos = new AtomicLong();
+    Collection<Pair<Document, List<Entity>>> dataToPass = new AbstractList<Pair<Document,List<Entity>>>(){
       public Pair<Document,List<Entity>> get(int i) {
-        File f = data[i];
-        SerializedDatum datum = getDatum(f);
-        //((get mentions))
-        List<Mention> mentions = null;
-        if(mentionType.equalsIgnoreCase("gold")){
-          mentions = datum.goldMentions;
-        } else if(mentionType.equalsIgnoreCase("predicted")) {
-          mentions = datum.predictedMentions;
-        } else {
-          throw new IllegalArgumentException("Unknown mention extractor: " + mentionType);
-        }
-        //((set mentions))
-        datum.document.setMentions(mentions);
+        long start = System.nanoTime();
+        SerializedDatum datum = checkout(data[i], mentionType);
+        checkoutNanos.addAndGet(System.nanoTime() - start);
         //((sanity checks))
         for(Entity e : datum.goldClusters){
           if(e.size() == 0){ throw new IllegalStateException("Gold cluster has size 0 (not your fault)!"); }
@@ -391,36 +557,140 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
       public int size() {
         return data.length;
       }
-    });
+    };
     //--Train
-    system.train(dataToPass);
+    //(every system sees the same documents; they are decoded once if the cache is large enough)
+    int numThreads = Integer.parseInt(props.getProperty("threads", "1"));
+    String featureCache = props.getProperty("featureCache");
+    int maxMentionDistance = Integer.parseInt(props.getProperty("maxMentionDistance", "0"));
+    int maxSentenceDistance = Integer.parseInt(props.getProperty("maxSentenceDistance", "0"));
+    int maxCandidates = Integer.parseInt(props.getProperty("maxCandidates", "0"));
+    String optimizer = props.getProperty("optimizer", "lbfgs");
+    double l2 = Double.parseDouble(props.getProperty("l2", "1.0"));
+    int maxIterations = Integer.parseInt(props.getProperty("maxIterations", "200"));
+    double learningRate = Double.parseDouble(props.getProperty("learningRate", "0.1"));
+    double heldOut = Double.parseDouble(props.getProperty("heldOut", "0.0"));
+    int patience = Integer.parseInt(props.getProperty("patience", "5"));
+    String loadModel = props.getProperty("loadModel");
+    String saveModel = props.getProperty("saveModel");
+    for(int i=0; i<systems.size(); i++){
+      if(systems.get(i) instanceof MultithreadedTraining){
+        ((MultithreadedTraining) systems.get(i)).setTrainingThreads(numThreads);
+      }
+      if(systems.get(i) instanceof ConfigurableTraining){
+        ((ConfigurableTraining) systems.get(i)).setTrainingOptions(optimizer, l2, maxIterations, learningRate, heldOut, patience);
+      }
+      if(featureCache != null && systems.get(i) instanceof FeatureCaching){
+        ((FeatureCaching) systems.get(i)).setFeatureCache(new File(featureCache), mentionType);
+      }
+      if(systems.get(i) instanceof CandidateLimits){
+        ((CandidateLimits) systems.get(i)).setCandidateLimits(maxMentionDistance, maxSentenceDistance, maxCandidates);
+      }
+      checkoutNanos.set(0);
+      long start = System.nanoTime();
+      try {
+        if(loadModel != null && systems.get(i) instanceof PersistentModel){
+          //(case: load the model instead of training)
+          ((PersistentModel) systems.get(i)).loadModel(modelFile(loadModel, i));
+        } else {
+          systems.get(i).train(dataToPass);
+        }
+        trainNanos[i] = System.nanoTime() - start - checkoutNanos.get();
+        if(saveModel != null && systems.get(i) instanceof PersistentModel){
+          ((PersistentModel) systems.get(i)).saveModel(modelFile(saveModel, i));
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
     //--Return
     return test(data,props);
   }
 
-  public CoreferenceScore test(File[] data, Properties props){
+  /**
+   * Run the system over a collection of documents, and score the result.
+   * If the <code>threads</code> property is greater than one, documents are
+   * decoded and run in parallel, each on a thread of its own so that systems may
+   * log from runCoreference() (see {@link LoggedThreads}); the per-document results
+   * are still entered into the score in the order of the data array, so the
+   * scores do not depend on the number of threads.
+   * Otherwise, documents are run one at a time, while the next ones are
+   * decoded in the background (see the <code>prefetch</code> property).
+   * When comparing several systems, each document is decoded once and run
+   * through every system in turn.
+   * @param data The serialized documents to test on
+   * @param props The properties to run with (mentionExtractor, threads, prefetch)
+   * @return The score of each system on the given documents, in the order of the systems
+   */
+  public List<CoreferenceScore> test(File[] data, Properties props){
     //--Variables
     //(get properties)
-    String mentionType = props.getProperty("mentionExtractor", "gold");
-    //(scorer)
-    CoreferenceScore score = new CoreferenceScore();
+    final String mentionType = props.getProperty("mentionExtractor", "gold");
+    int numThreads = Integer.parseInt(props.getProperty("threads", "1"));
+    //(scorers)
+    List<CoreferenceScore> scores = new ArrayList<CoreferenceScore>(systems.size());
+    for(int i=0; i<systems.size(); i++){
+      scores.add(new CoreferenceScore());
+      coreferenceNanos.set(i, 0);
+    }
     //--Run Coreference
-    for(File f : data){
-      SerializedDatum datum = getDatum(f);
-      Document doc = datum.document;
-      //(get mentions)
-      List<Mention> mentions = null;
-      if(mentionType.equalsIgnoreCase("gold")){
-        mentions = datum.goldMentions;
-      } else if(mentionType.equalsIgnoreCase("predicted")) {
-        mentions = datum.predictedMentions;
-      } else {
-        throw new IllegalArgumentException("Unknown mention extractor: " + mentionType);
+    if(numThreads <= 1){
+      //(case: single threaded)
+      PrefetchingIterator<File,SerializedDatum> iter = prefetch(Arrays.asList(data), props);
+      try {
+        for(int i=0; iter.hasNext(); i++){
+          enter(scores, testDocument(data[i], iter.next(), mentionType));
+        }
+      } finally {
+        iter.close();
+      }
+    } else {
+      //(case: multithreaded)
+      List<Callable<List<CoreferenceScore>>> tasks = new ArrayList<Callable<List<CoreferenceScore>>>(data.length);
+      for(final File f : data){
+        tasks.add(new Callable<List<CoreferenceScore>>(){
+          public List<CoreferenceScore> call() {
+            return testDocument(f, documents.get(f), mentionType);
+          }
+        });
+      }
+      //((enter scores in document order))
+      for(List<CoreferenceScore> result : LoggedThreads.run("Testing", tasks, numThreads)){
+        enter(scores, result);
       }
+    }
+    //--Return
+    return scores;
+  }
+
+  /**
+   * Run every system on a single decoded document, check the results, and score them.
+   * The systems run one after the other; each starts from a document with no
+   * coreference marked, and its guess is scored before the next system runs, since
+   * the mentions record their coreference in place.
+   * This method touches no state shared between documents, other than the systems
+   * themselves (and the synchronized profiler and timings), and is therefore safe to
+   * call from multiple threads at once.
+   * @param f The file the document was read from
+   * @param datum The decoded document
+   * @param mentionType The mention extractor to use (gold or predicted)
+   * @return The score of each system on this document alone
+   */
+  private List<CoreferenceScore> testDocument(File f, SerializedDatum datum, String mentionType){
+    List<CoreferenceScore> scores = new ArrayList<CoreferenceScore>(systems.size());
+    for(int i=0; i<systems.size(); i++){
       //(set mentions)
-      datum.document.setMentions(mentions);
+      Profiler.Mark mark = profiler.start();
+      prepare(datum, mentionType);
+      profiler.stop(f.getPath(), Profiler.Stage.PREPARE, mark);
       //(run coreference)
-      Collection<ClusteredMention> guess = system.runCoreference(datum.document);
+      mark = profiler.start();
+      long start = System.nanoTime();
+      Collection<ClusteredMention> guess = systems.get(i).runCoreference(datum.document);
+      coreferenceNanos.addAndGet(i, System.nanoTime() - start);
+      profiler.stop(f.getPath(), Profiler.Stage.COREFERENCE, mark);
+      //(check result)
+      mark = profiler.start();
       HashSet<ClusteredMention> uniqueCheck = new HashSet<ClusteredMention>();
       for(ClusteredMention m : guess){ uniqueCheck.add(m); }
       if(uniqueCheck.size() != guess.size()){
@@ -432,12 +702,25 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
       if(!datum.document.areAllMentionsClustered()){
         throw new IllegalStateException("You did not assign every entity to a cluster");
       }
-      //(enter score)
-      Collection<Entity> gold = datum.goldClusters;
-      score.enter(datum.document, guess, gold);
+      profiler.stop(f.getPath(), Profiler.Stage.VALIDATE, mark);
+      //(score)
+      mark = profiler.start();
+      scores.add(new CoreferenceScore().enter(datum.document, guess, datum.goldClusters));
+      profiler.stop(f.getPath(), Profiler.Stage.SCORE, mark);
+    }
+    //(return)
+    return scores;
+  }
+
+  /**
+   * Add the scores of a single document to the running scores of each system.
+   * @param scores The running scores
+   * @param documentScores The scores of each system on one document
+   */
+  private static void enter(List<CoreferenceScore> scores, List<CoreferenceScore> documentScores){
+    for(int i=0; i<scores.size(); i++){
+      scores.get(i).add(documentScores.get(i));
     }
-    //--Return
-    return score;
   }
 
   public String debug(File[] data, Properties props){
@@ -453,58 +736,237 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
     }
     //(debug printout)
     StringBuilder debug = new StringBuilder();
-    //(documents read)
-    int numDocumentsRead = 0;
+    //(documents to read)
+    PrefetchingIterator<File,SerializedDatum> iter
+        = prefetch(Arrays.asList(data).subList(0, Math.min(numDocuments, data.length)), props);
     //--Run Coreference
-    for(File f : data){
-      if(numDocumentsRead >= numDocuments){ break; }
-      numDocumentsRead += 1;
-      SerializedDatum datum = getDatum(f);
-      Document doc = datum.document;
-      //(get mentions)
-      List<Mention> mentions = null;
-      if(mentionType.equalsIgnoreCase("gold")){
-        mentions = datum.goldMentions;
-      } else if(mentionType.equalsIgnoreCase("predicted")) {
-        mentions = datum.predictedMentions;
-      } else {
-        throw new IllegalArgumentException("Unknown mention extractor: " + mentionType);
+    try {
+      while(iter.hasNext()){
+        SerializedDatum datum = iter.next();
+        for(SYS system : systems){
+          prepare(datum, mentionType);
+          Document doc = datum.document;
+          //(run coreference)
+          Collection<ClusteredMention> guess = system.runCoreference(datum.document);
+          //(enter score)
+          Collection<Entity> gold = datum.goldClusters;
+          debug.append("=====Document " + doc.id.replaceAll("/",".") +
+                  (systems.size() > 1 ? " (" + system.getClass().getSimpleName() + ")" : "") + "=====\n")
+              .append(doc.debug(guess,gold)).append("\n");
+        }
       }
-      //(set mentions)
-      datum.document.setMentions(mentions);
-      //(run coreference)
-      Collection<ClusteredMention> guess = system.runCoreference(datum.document);
-      //(enter score)
-      Collection<Entity> gold = datum.goldClusters;
-      debug.append("=====Document " + doc.id.replaceAll("/",".") + "=====\n")
-          .append(doc.debug(guess,gold)).append("\n");
+    } finally {
+      iter.close();
     }
     //--Return
     return debug.toString();
   }
 
-  private static SerializedDatum getDatum(File serializedDatum){
+  private static SerializedDatum getDatum(File serializedDatum, Profiler profiler){
     try{
+        Profiler.Mark mark = profiler.start();
+        SerializedDatum datum;
         if(plaintext){
           //(case: plaintext)
-          return SerializedDatum.decode(IOUtils.slurpFile(serializedDatum));
+          String encoded = IOUtils.slurpFile(serializedDatum);
+          profiler.stop(serializedDatum.getPath(), Profiler.Stage.READ, mark);
+          mark = profiler.start();
+          datum = SerializedDatum.decode(encoded);
         } else {
-          //(case: serialized)
-          return  IOUtils.readObjectFromFile(serializedDatum);
+          //(case: binary)
+          ByteBuffer encoded = BinaryCorpus.map(serializedDatum);
+          profiler.stop(serializedDatum.getPath(), Profiler.Stage.READ, mark);
+          mark = profiler.start();
+          datum = BinaryCorpus.read(encoded);
         }
+        profiler.stop(serializedDatum.getPath(), Profiler.Stage.DECODE, mark);
+        return datum;
       } catch (IOException e) {
         throw new RuntimeException(e);
-      } catch (ClassNotFoundException e) {
-        throw new RuntimeException(e);
       }
   }
 
+  /**
+   * The time each system spent in runCoreference() during the last call to test()
+   * @return The time in nanoseconds, in the order of the systems
+   */
+  private long[] coreferenceNanos(){
+    long[] nanos = new long[systems.size()];
+    for(int i=0; i<nanos.length; i++){
+      nanos[i] = coreferenceNanos.get(i);
+    }
+    return nanos;
+  }
+
+  /**
+   * Print the scores and timings of several systems side by side.
+   * @param names The names of the systems
+   * @param scores The score of each system
+   * @param trainNanos The time each system took to train, not counting reading and decoding
+   *                   the documents (which only the first system may have to do), or null to leave it out
+   * @param coreferenceNanos The time each system spent in runCoreference()
+   */
+  private static void reportComparison(List<String> names, List<CoreferenceScore> scores, long[] trainNanos, long[] coreferenceNanos){
+    int width = "system".length();
+    for(String name : names){ width = Math.max(width, name.length()); }
+    System.out.println(String.format("%-" + width + "s %8s %8s %8s %8s %8s %8s %10s %10s",
+        "system", "MUC P", "MUC R", "MUC F1", "B^3 P", "B^3 R", "B^3 F1", "train s", "coref s"));
+    for(int i=0; i<names.size(); i++){
+      CoreferenceScore score = scores.get(i);
+      System.out.println(String.format("%-" + width + "s %8.4f %8.4f %8.4f %8.4f %8.4f %8.4f %10s %10.3f",
+          names.get(i),
+          score.precisionMUC(), score.recallMUC(), score.f1MUC(),
+          score.precisionB3(), score.recallB3(), score.f1B3(),
+          trainNanos == null ? "-" : String.format("%.3f", trainNanos[i] / 1e9),
+          coreferenceNanos[i] / 1e9));
+    }
+  }
+
+  /**
+   * Run k-fold cross validation over the training documents.
+   * The documents are split into contiguous folds; for each fold, new instances of
+   * the systems are trained on the other folds and tested on it.
+   * Folds run in parallel (on <code>foldThreads</code> threads, by default one per
+   * core). Since mentions record their coreference in place, a document cannot be
+   * shared between folds running at the same time: each fold decodes its own copy
+   * of the documents, into its own cache. Documents within a fold are run on a
+   * single thread. The systems of every fold are created up front, on the calling
+   * thread, and each fold runs on a thread of its own (see {@link LoggedThreads}).
+   * Prints the score of every fold, and the mean and standard deviation of each
+   * metric over folds, as well as the score over all folds pooled together.
+   * @param systemNames The systems to cross validate
+   * @param data The training documents
+   * @param numFolds The number of folds
+   * @param props The properties to run with
+   * @param cacheDocuments The maximum number of documents to cache, in total
+   * @param cacheMB The maximum (estimated heap) size of the documents to cache, in total
+   */
+  private static void crossValidate(final List<String> systemNames, File[] data, int numFolds, Properties props,
+                                    int cacheDocuments, long cacheMB){
+    //--Variables
+    if(numFolds < 2 || numFolds > data.length){
+      throw new IllegalArgumentException("Invalid number of folds: " + numFolds + " (must be between 2 and " + data.length + ")");
+    }
+    int numThreads = Math.min(numFolds,
+        Integer.parseInt(props.getProperty("foldThreads", "" + Runtime.getRuntime().availableProcessors())));
+    //(each fold runs its documents on one thread)
+    final Properties foldProps = new Properties();
+    foldProps.putAll(props);
+    foldProps.setProperty("threads", "1");
+    foldProps.remove("loadModel");  // (a model trained on every fold would see the test fold)
+    foldProps.remove("saveModel");
+    //(split the cache between the folds running at once)
+    final int foldCacheDocuments = Math.max(0, cacheDocuments / numThreads);
+    final long foldCacheMB = Math.max(0, cacheMB / numThreads);
+    //--Create Folds
+    List<File[]> trainFolds = new ArrayList<File[]>();
+    List<File[]> testFolds = new ArrayList<File[]>();
+    for(int fold=0; fold<numFolds; fold++){
+      int begin = (int) ((long) fold * data.length / numFolds);
+      int end = (int) ((long) (fold + 1) * data.length / numFolds);
+      File[] trainFold = new File[data.length - (end - begin)];
+      System.arraycopy(data, 0, trainFold, 0, begin);
+      System.arraycopy(data, end, trainFold, begin, data.length - end);
+      trainFolds.add(trainFold);
+      testFolds.add(Arrays.copyOfRange(data, begin, end));
+    }
+    //--Run Folds
+    System.out.println("-------------------------");
+    System.out.println(" CROSS VALIDATION (" + numFolds + " folds, " + numThreads + " threads)");
+    System.out.println("-------------------------");
+    //(new systems for every fold, created here: constructors may configure logging)
+    List<Callable<List<CoreferenceScore>>> folds = new ArrayList<Callable<List<CoreferenceScore>>>(numFolds);
+    for(int fold=0; fold<numFolds; fold++){
+      final File[] trainFold = trainFolds.get(fold);
+      final File[] testFold = testFolds.get(fold);
+      final List<CoreferenceSystem> systems = new ArrayList<CoreferenceSystem>();
+      for(String name : systemNames){ systems.add(createSystem(name)); }
+      folds.add(new Callable<List<CoreferenceScore>>(){
+        public List<CoreferenceScore> call() {
+          //(train and test)
+          Profiler profiler = new Profiler(false);
+          CoreferenceTester<CoreferenceSystem> tester = new CoreferenceTester<CoreferenceSystem>(
+              systems, documentCache(foldCacheDocuments, foldCacheMB, profiler), profiler);
+          tester.train(trainFold, foldProps);
+          return tester.test(testFold, foldProps);
+        }
+      });
+    }
+    //(run folds; each on a thread of its own, so that systems may log)
+    List<List<CoreferenceScore>> foldScores = LoggedThreads.run("Folds", folds, numThreads);
+    //--Report
+    String[] metrics = { "MUC P", "MUC R", "MUC F1", "B^3 P", "B^3 R", "B^3 F1" };
+    for(int sys=0; sys<systemNames.size(); sys++){
+      System.out.println("--" + systemNames.get(sys) + "--");
+      StringBuilder header = new StringBuilder(String.format("%-8s", "fold"));
+      for(String metric : metrics){ header.append(String.format(" %8s", metric)); }
+      System.out.println(header);
+      //(every fold)
+      double[][] values = new double[numFolds][];
+      CoreferenceScore pooled = new CoreferenceScore();
+      for(int fold=0; fold<numFolds; fold++){
+        CoreferenceScore score = foldScores.get(fold).get(sys);
+        values[fold] = new double[]{ score.precisionMUC(), score.recallMUC(), score.f1MUC(),
+            score.precisionB3(), score.recallB3(), score.f1B3() };
+        pooled.add(score);
+        StringBuilder line = new StringBuilder(String.format("%-8s", "" + fold + " (" + testFolds.get(fold).length + ")"));
+        for(double value : values[fold]){ line.append(String.format(" %8.4f", value)); }
+        System.out.println(line);
+      }
+      //(mean and standard deviation)
+      StringBuilder meanLine = new StringBuilder(String.format("%-8s", "mean"));
+      StringBuilder stdLine = new StringBuilder(String.format("%-8s", "stddev"));
+      for(int m=0; m<metrics.length; m++){
+        double mean = 0.0;
+        for(int fold=0; fold<numFolds; fold++){ mean += values[fold][m]; }
+        mean /= (double) numFolds;
+        double variance = 0.0;
+        for(int fold=0; fold<numFolds; fold++){ variance += (values[fold][m] - mean) * (values[fold][m] - mean); }
+        variance /= (double) (numFolds - 1);
+        meanLine.append(String.format(" %8.4f", mean));
+        stdLine.append(String.format(" %8.4f", Math.sqrt(variance)));
+      }
+      System.out.println(meanLine);
+      System.out.println(stdLine);
+      //(pooled)
+      StringBuilder pooledLine = new StringBuilder(String.format("%-8s", "pooled"));
+      for(double value : new double[]{ pooled.precisionMUC(), pooled.recallMUC(), pooled.f1MUC(),
+          pooled.precisionB3(), pooled.recallB3(), pooled.f1B3() }){
+        pooledLine.append(String.format(" %8.4f", value));
+      }
+      System.out.println(pooledLine);
+      System.out.println();
+    }
+  }
+
+  /**
+   * Create a coreference system from its class name; the package may be left out
+   * for systems in cs224n.corefsystems, and "baseline" is the baseline system.
+   * @param systemClass The name of the system
+   * @return A new instance of the system
+   */
+  private static CoreferenceSystem createSystem(String systemClass){
+    if(systemClass.equalsIgnoreCase("baseline")){ systemClass = BaselineCoreferenceSystem.class.getName(); }
+    try{
+      //((try loading the class))
+      return MetaClass.create(systemClass).createInstance();
+    } catch(MetaClass.ClassCreationException e){
+      //((maybe you forgot to include the package))
+      try{
+        return MetaClass.create("cs224n.corefsystems."+systemClass).createInstance();
+      } catch(MetaClass.ClassCreationException e2){
+        //((give up loading the class))
+        throw e;
+      }
+    }
+  }
+
   private static File[] getData(String dataPath, DataType dataType, int count){
     File[] data = new File[count];
     int i=0;
     Iterable<File> files = plaintext
         ? IOUtils.iterFilesRecursive(new File(dataPath + "/" + conllData(dataType)), ".dat")
-        : IOUtils.iterFilesRecursive(new File(dataPath + "/" + conllData(dataType)), ".ser.gz");
+        : IOUtils.iterFilesRecursive(new File(dataPath + "/" + conllData(dataType)), BinaryCorpus.EXTENSION);
     for(File serializedDatum : files){
       if(i >= data.length){ break; }
       data[i] = serializedDatum;
@@ -541,22 +1003,15 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 
     //--Create Coreference Class
     System.out.print("Creating model...");
-    //(classname)
-    String systemClass = props.getProperty("model","baseline");
-    if(systemClass.equalsIgnoreCase("baseline")){ systemClass = BaselineCoreferenceSystem.class.getName(); }
+    //(classnames; a comma separated list compares several systems)
+    List<String> systemNames = new ArrayList<String>();
+    for(String name : props.getProperty("model","baseline").split(",")){
+      if(!name.trim().equals("")){ systemNames.add(name.trim()); }
+    }
     //(create)
-    CoreferenceSystem system;
-    try{
-      //((try loading the class))
-      system = MetaClass.create(systemClass).createInstance();
-    } catch(MetaClass.ClassCreationException e){
-      //((maybe you forgot to include the package))
-      try{
-        system = MetaClass.create("cs224n.corefsystems."+systemClass).createInstance();
-      } catch(MetaClass.ClassCreationException e2){
-        //((give up loading the class))
-        throw e;
-      }
+    List<CoreferenceSystem> systems = new ArrayList<CoreferenceSystem>();
+    for(String name : systemNames){
+      systems.add(createSystem(name));
     }
     System.out.println("done");
 
@@ -573,6 +1028,9 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
       System.out.println("ERROR: not a directory");
       System.exit(1);
     }
+    //(get format)
+    plaintext = Boolean.parseBoolean(props.getProperty("plaintext", "true"));
+    System.out.print("[" + (plaintext ? "plaintext" : "binary") + "]...");
     //(get number of documents)
     int numDocs = -1;
     try {
@@ -605,17 +1063,31 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
 
     //--TRAIN/TEST
     //(create)
-    CoreferenceTester<CoreferenceSystem> tester = new CoreferenceTester<CoreferenceSystem>(system);
+    int cacheDocuments = Integer.parseInt(props.getProperty("cacheDocuments", "" + (train.length + test.length)));
+    //((by default, the documents may take up to a quarter of the heap))
+    long cacheMB = Long.parseLong(props.getProperty("cacheMB", "" + (Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024))));
+    boolean profile = Boolean.parseBoolean(props.getProperty("profile", "false")) || props.containsKey("profileCsv");
+    Profiler profiler = new Profiler(profile);
+    //(cross validation)
+    if(props.containsKey("folds")){
+      crossValidate(systemNames, train, Integer.parseInt(props.getProperty("folds")), props, cacheDocuments, cacheMB);
+      return;
+    }
+    CoreferenceTester<CoreferenceSystem> tester = new CoreferenceTester<CoreferenceSystem>(systems, documentCache(cacheDocuments, cacheMB, profiler), profiler);
     //(traing)
     System.out.println("----------");
     System.out.println(" TRAINING");
     System.out.println("----------");
-    CoreferenceScore trainScore = tester.train(train, props);
+    profiler.beginPass("Training");
+    List<CoreferenceScore> trainScores = tester.train(train, props);
+    long[] trainCoreferenceNanos = tester.coreferenceNanos();
     //(test)
     System.out.println("---------");
     System.out.println(" TESTING");
     System.out.println("---------");
-    CoreferenceScore testScore = tester.test(test, props);
+    profiler.beginPass(props.getProperty("data","dev"));
+    List<CoreferenceScore> testScores = tester.test(test, props);
+    long[] testCoreferenceNanos = tester.coreferenceNanos();
     //(debug)
     if(props.containsKey("mistakes")){
       System.out.println("----------------");
@@ -627,11 +1099,39 @@ public class CoreferenceTester<SYS extends CoreferenceSystem> {
     System.out.println("--------------------");
     System.out.println(" COREFERENCE SCORES");
     System.out.println("--------------------");
-    System.out.println("--Training--");
-    trainScore.report();
-    System.out.println();
-    System.out.println("--"+props.getProperty("data","dev")+"--");
-    testScore.report();
+    if(systems.size() == 1){
+      //(case: a single system)
+      System.out.println("--Training--");
+      trainScores.get(0).report();
+      System.out.println();
+      System.out.println("--"+props.getProperty("data","dev")+"--");
+      testScores.get(0).report();
+    } else {
+      //(case: comparing systems)
+      System.out.println("--Training--");
+      reportComparison(systemNames, trainScores, tester.trainNanos, trainCoreferenceNanos);
+      System.out.println();
+      System.out.println("--"+props.getProperty("data","dev")+"--");
+      reportComparison(systemNames, testScores, null, testCoreferenceNanos);
+    }
+    //(profile)
+    if(profiler.isEnabled()){
+      System.out.println();
+      System.out.println("--------------------");
+      System.out.println(" PROFILE");
+      System.out.println("--------------------");
+      profiler.report(System.out);
+      System.out.println();
+      System.out.println("--document cache--");
+      System.out.println(tester.documents);
+      if(props.containsKey("profileCsv")){
+        try {
+          profiler.writeCsv(new File(props.getProperty("profileCsv")));
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
 
   }
 
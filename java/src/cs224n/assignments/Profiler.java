@@ -0,0 +1,243 @@
+package cs224n.assignments;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+/**
+ * Records the wall time, CPU time and allocated bytes spent in each stage of
+ * testing, for each document.
+ * Measurements are taken on the thread doing the work (through ThreadMXBean), so
+ * that documents processed in parallel, or decoded on a prefetching thread, are
+ * measured correctly.
+ * CPU time and allocation are reported as -1 if the JVM does not support them.
+ * A disabled profiler records nothing, and costs nothing beyond a method call.
+ */
+public class Profiler {
+  /** The stages a document goes through */
+  public static enum Stage { READ, DECODE, PREPARE, COREFERENCE, VALIDATE, SCORE }
+
+  private static final int WALL = 0;
+  private static final int CPU = 1;
+  private static final int ALLOC = 2;
+  private static final String[] MEASURES = { "wall_ns", "cpu_ns", "alloc_bytes" };
+
+  private static final int NUM_SLOWEST = 10;
+
+  /**
+   * A point in time on a particular thread, from which the cost of a stage is measured.
+   */
+  public static final class Mark {
+    private final long wall;
+    private final long cpu;
+    private final long alloc;
+    private Mark(long wall, long cpu, long alloc){
+      this.wall = wall;
+      this.cpu = cpu;
+      this.alloc = alloc;
+    }
+  }
+
+  private final boolean enabled;
+  private final ThreadMXBean threads;
+  private final com.sun.management.ThreadMXBean allocations;
+
+  /** pass -&gt; document -&gt; stage -&gt; measure */
+  private final Map<String,Map<String,long[][]>> passes = new LinkedHashMap<String,Map<String,long[][]>>();
+  private Map<String,long[][]> currentPass = null;
+
+  /**
+   * Create a new profiler.
+   * @param enabled If false, nothing is recorded.
+   */
+  public Profiler(boolean enabled){
+    this.enabled = enabled;
+    ThreadMXBean threads = null;
+    com.sun.management.ThreadMXBean allocations = null;
+    if(enabled){
+      //(CPU time)
+      threads = ManagementFactory.getThreadMXBean();
+      if(threads.isCurrentThreadCpuTimeSupported()){
+        threads.setThreadCpuTimeEnabled(true);
+      } else {
+        threads = null;
+      }
+      //(allocation; only some JVMs)
+      ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if(bean instanceof com.sun.management.ThreadMXBean &&
+          ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()){
+        allocations = (com.sun.management.ThreadMXBean) bean;
+        allocations.setThreadAllocatedMemoryEnabled(true);
+      }
+    }
+    this.threads = threads;
+    this.allocations = allocations;
+    beginPass("");
+  }
+
+  public boolean isEnabled(){ return enabled; }
+
+  /**
+   * Start recording under a new pass (e.g., training or dev); documents seen in
+   * several passes are reported separately for each.
+   * @param name The name of the pass
+   */
+  public synchronized void beginPass(String name){
+    if(!passes.containsKey(name)){ passes.put(name, new LinkedHashMap<String,long[][]>()); }
+    currentPass = passes.get(name);
+  }
+
+  /**
+   * Mark the start of a stage, on the current thread.
+   * @return The mark to pass to {@link Profiler#stop(String, Stage, Mark)}, or null if disabled
+   */
+  public Mark start(){
+    if(!enabled){ return null; }
+    return new Mark(System.nanoTime(), cpuTime(), allocatedBytes());
+  }
+
+  /**
+   * Mark the end of a stage, on the same thread as it was started, and record its cost.
+   * A stage run several times for a document is recorded as the sum of the runs.
+   * @param document The document the stage was run on
+   * @param stage The stage
+   * @param start The mark returned by {@link Profiler#start()}
+   */
+  public void stop(String document, Stage stage, Mark start){
+    if(!enabled || start == null){ return; }
+    //(measure)
+    long wall = System.nanoTime() - start.wall;
+    long cpu = start.cpu < 0 ? -1 : cpuTime() - start.cpu;
+    long alloc = start.alloc < 0 ? -1 : allocatedBytes() - start.alloc;
+    //(record)
+    synchronized(this){
+      long[][] record = currentPass.get(document);
+      if(record == null){
+        record = new long[Stage.values().length][MEASURES.length];
+        currentPass.put(document, record);
+      }
+      long[] measures = record[stage.ordinal()];
+      measures[WALL] += wall;
+      measures[CPU] = cpu < 0 ? -1 : measures[CPU] + cpu;
+      measures[ALLOC] = alloc < 0 ? -1 : measures[ALLOC] + alloc;
+    }
+  }
+
+  private long cpuTime(){
+    return threads == null ? -1 : threads.getCurrentThreadCpuTime();
+  }
+
+  private long allocatedBytes(){
+    return allocations == null ? -1 : allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Print, for each pass, percentiles of the cost of every stage over documents,
+   * and the documents which took the longest overall.
+   * @param out The stream to print to
+   */
+  public synchronized void report(PrintStream out){
+    if(!enabled){ return; }
+    for(Map.Entry<String,Map<String,long[][]>> pass : passes.entrySet()){
+      Map<String,long[][]> documents = pass.getValue();
+      if(documents.isEmpty()){ continue; }
+      out.println("--" + pass.getKey() + "-- (" + documents.size() + " documents)");
+      //--Stages
+      out.println(String.format("%-12s %10s %10s %10s %10s %10s %12s %12s",
+          "stage", "p50 ms", "p90 ms", "p99 ms", "max ms", "total ms", "cpu ms", "alloc MB"));
+      for(Stage stage : Stage.values()){
+        long[] wall = new long[documents.size()];
+        long cpu = 0;
+        long alloc = 0;
+        int i = 0;
+        for(long[][] record : documents.values()){
+          long[] measures = record[stage.ordinal()];
+          wall[i] = measures[WALL];
+          cpu = (cpu < 0 || measures[CPU] < 0) ? -1 : cpu + measures[CPU];
+          alloc = (alloc < 0 || measures[ALLOC] < 0) ? -1 : alloc + measures[ALLOC];
+          i += 1;
+        }
+        Arrays.sort(wall);
+        long total = 0;
+        for(long w : wall){ total += w; }
+        out.println(String.format("%-12s %10.3f %10.3f %10.3f %10.3f %10.1f %12s %12s",
+            stage.name().toLowerCase(),
+            millis(percentile(wall, 0.50)), millis(percentile(wall, 0.90)), millis(percentile(wall, 0.99)),
+            millis(wall[wall.length - 1]), millis(total),
+            cpu < 0 ? "n/a" : String.format("%.1f", millis(cpu)),
+            alloc < 0 ? "n/a" : String.format("%.1f", alloc / (1024.0 * 1024.0))));
+      }
+      //--Slowest Documents
+      List<Map.Entry<String,long[][]>> slowest = new ArrayList<Map.Entry<String,long[][]>>(documents.entrySet());
+      Collections.sort(slowest, new Comparator<Map.Entry<String,long[][]>>(){
+        public int compare(Map.Entry<String,long[][]> a, Map.Entry<String,long[][]> b) {
+          long wallA = totalWall(a.getValue());
+          long wallB = totalWall(b.getValue());
+          return wallA < wallB ? 1 : (wallA > wallB ? -1 : 0);
+        }
+      });
+      out.println("slowest documents:");
+      for(Map.Entry<String,long[][]> entry : slowest.subList(0, Math.min(NUM_SLOWEST, slowest.size()))){
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("  %10.3f ms  %s  (", millis(totalWall(entry.getValue())), entry.getKey()));
+        for(Stage stage : Stage.values()){
+          if(stage.ordinal() > 0){ b.append(", "); }
+          b.append(stage.name().toLowerCase()).append(" ")
+              .append(String.format("%.3f", millis(entry.getValue()[stage.ordinal()][WALL])));
+        }
+        out.println(b.append(")").toString());
+      }
+      out.println();
+    }
+  }
+
+  /**
+   * Write every measurement as a CSV file, with one line per pass, document and stage.
+   * @param file The file to write to
+   * @throws IOException If the file could not be written
+   */
+  public synchronized void writeCsv(File file) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(file));
+    try {
+      out.println("pass,document,stage," + MEASURES[WALL] + "," + MEASURES[CPU] + "," + MEASURES[ALLOC]);
+      for(Map.Entry<String,Map<String,long[][]>> pass : passes.entrySet()){
+        for(Map.Entry<String,long[][]> document : pass.getValue().entrySet()){
+          for(Stage stage : Stage.values()){
+            long[] measures = document.getValue()[stage.ordinal()];
+            out.println(csv(pass.getKey()) + "," + csv(document.getKey()) + "," + stage.name().toLowerCase() + "," +
+                measures[WALL] + "," + measures[CPU] + "," + measures[ALLOC]);
+          }
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static long totalWall(long[][] record){
+    long total = 0;
+    for(long[] measures : record){ total += measures[WALL]; }
+    return total;
+  }
+
+  private static long percentile(long[] sorted, double p){
+    int index = (int) Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  private static double millis(long nanos){
+    return nanos / 1000000.0;
+  }
+
+  private static String csv(String field){
+    if(field.contains(",") || field.contains("\"")){
+      return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+    return field;
+  }
+}
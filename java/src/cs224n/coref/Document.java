@@ -23,7 +23,7 @@ public class Document implements Serializable, Decodable {
    */
   public final List<Sentence> sentences;
   private List<Mention> mentions = null;
-  private final HashMap<Sentence,Integer> sentenceToIndex = new HashMap<Sentence,Integer>();
+  private transient HashMap<String,Integer> symbolIds = null;
   private final HashMap<Mention,Integer> mentionToIndex = new HashMap<Mention,Integer>();
 
   /**
@@ -36,6 +36,13 @@ public class Document implements Serializable, Decodable {
   public Document(String id, List<Sentence> sentences){
     this.id = id;
     this.sentences = sentences;
+    //(number the sentences)
+    int tokenOffset = 0;
+    for(int i=0; i<sentences.size(); i++){
+      Sentence s = sentences.get(i);
+      s.setPosition(i, tokenOffset);
+      tokenOffset += s.length();
+    }
   }
 
   /**
@@ -45,13 +52,35 @@ public class Document implements Serializable, Decodable {
    * @return The document
    */
   public Document setMentions(List<Mention> mentions){
-    for(Mention mention : mentions){
+    for(int i=0; i<mentions.size(); i++){
+      Mention mention = mentions.get(i);
       if(mention.doc != this){ throw new IllegalArgumentException("Mention does not belong to this document: " + mention); }
+      mention.index = i;
+      mention.profile();  // precompute the attributes systems look up for every pair
     }
     this.mentions = mentions;
+    synchronized(mentionToIndex){ mentionToIndex.clear(); }
     return this;
   }
 
+  /**
+   * A dense id for a string of this document (e.g., a word or a tag of one of its
+   * mentions); equal strings get the same id, so that attributes of the document's
+   * mentions can be compared by id (see {@link MentionProfile}).
+   * Ids are only meaningful within a document, and are forgotten with it.
+   * @param symbol The string
+   * @return The id of the string, between 0 and the number of distinct strings seen
+   */
+  public synchronized int symbolId(String symbol){
+    if(symbolIds == null){ symbolIds = new HashMap<String,Integer>(); }
+    Integer id = symbolIds.get(symbol);
+    if(id == null){
+      id = symbolIds.size();
+      symbolIds.put(symbol, id);
+    }
+    return id;
+  }
+
   /**
    * Returns the mentions associated with this document.
    * @return A list of mentions associated with the document.
@@ -180,40 +209,57 @@ public class Document implements Serializable, Decodable {
     return true;
   }
 
+  /**
+   * The index of a sentence in this document.
+   * This is a field lookup for the document's own sentences.
+   * @param s The sentence
+   * @return The index of the sentence in the document
+   */
   public int indexOfSentence(Sentence s){
-    //(try simple get)
-    Integer cand = sentenceToIndex.get(s);
-    if(cand == null){
-      //(populate map)
-      for(int i=0; i<sentences.size(); i++){
-        if(sentenceToIndex.containsKey(sentences.get(i))){ throw new IllegalStateException("Sentence equals() collision (not your fault!): " + sentences.get(i)); }
-        sentenceToIndex.put(sentences.get(i), i);
-      }
-      cand = sentenceToIndex.get(s);
-    }
+    //(try the sentence's own index)
+    int index = s.index();
+    if(index >= 0 && index < sentences.size() && sentences.get(index) == s){ return index; }
     //(error check)
-    if(cand == null){ throw new IllegalArgumentException("Sentence is not in document: " + s); }
-    //(return)
-    return cand.intValue();
+    throw new IllegalArgumentException("Sentence is not in document: " + s);
   }
 
+  /**
+   * The index of a mention in the mentions currently set on this document.
+   * This is a field lookup for the document's own mentions; a mention
+   * which is only equal to one of them is looked up by its span.
+   * @param m The mention
+   * @return The index of the mention in the document
+   */
   public int indexOfMention(Mention m){
-    //(try simple get)
-    Integer cand = mentionToIndex.get(m);
-    if(cand == null){
-      //(error check)
-      if(mentions == null){ throw new IllegalStateException("Document has no mentions stored"); }
-      //(populate map)
-      for(int i=0; i<mentions.size(); i++){
-        if(mentionToIndex.containsKey(mentions.get(i))){ throw new IllegalStateException("Mention equals() collision (not your fault!): " + mentions.get(i)); }
-        mentionToIndex.put(mentions.get(i), i);
-      }
-      cand = mentionToIndex.get(m);
-    }
     //(error check)
-    if(cand == null){ throw new IllegalArgumentException("Mention is not in document: " + m); }
+    if(mentions == null){ throw new IllegalStateException("Document has no mentions stored"); }
+    //(find)
+    int index = findMention(m);
+    //(error check)
+    if(index < 0){ throw new IllegalArgumentException("Mention is not in document: " + m); }
     //(return)
-    return cand.intValue();
+    return index;
+  }
+
+  /**
+   * As {@link Document#indexOfMention(Mention)}, but returning -1 if the mention
+   * is not one of this document's mentions.
+   */
+  int findMention(Mention m){
+    //(try the mention's own index)
+    int index = m.index;
+    if(index >= 0 && index < mentions.size() && mentions.get(index) == m){ return index; }
+    //(look up an equal mention)
+    synchronized(mentionToIndex){
+      if(mentionToIndex.isEmpty()){
+        for(int i=0; i<mentions.size(); i++){
+          if(mentionToIndex.containsKey(mentions.get(i))){ throw new IllegalStateException("Mention equals() collision (not your fault!): " + mentions.get(i)); }
+          mentionToIndex.put(mentions.get(i), i);
+        }
+      }
+      Integer cand = mentionToIndex.get(m);
+      return cand == null ? -1 : cand.intValue();
+    }
   }
 
   @Override
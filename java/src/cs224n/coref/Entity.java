@@ -6,6 +6,7 @@ import cs224n.util.Pair;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Denotes a real-world entity, as defined by a set of mentions.
@@ -14,7 +15,7 @@ import java.util.*;
  */
 public class Entity implements Serializable, Decodable, Iterable<Mention> {
   private static final long serialVersionUID = 1L;
-  private static int nextUniqueID = 0;
+  private static final AtomicInteger nextUniqueID = new AtomicInteger(0);
 
   private final List<Mention> mentionList;
   /**
@@ -25,7 +26,7 @@ public class Entity implements Serializable, Decodable, Iterable<Mention> {
   /**
    * A unique ID for this entity
    */
-  public final int uniqueID = nextUniqueID++; //set, then increment
+  public final int uniqueID = nextUniqueID.getAndIncrement(); //set, then increment
 
   /**
    * Create an empty entity.
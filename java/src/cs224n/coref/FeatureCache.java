@@ -0,0 +1,218 @@
+package cs224n.coref;
+
+import cs224n.util.Pair;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * An on-disk cache of the features extracted from the training pairs of documents,
+ * so that a later run with the same feature set can read them back instead of
+ * extracting them again.
+ *
+ * The features of a pair are stored as the value of each template (see
+ * {@link FeatureIndex}), not as feature ids, since ids depend on the order in
+ * which documents are seen. Entries are keyed by the document id, the mention
+ * source (gold or predicted), and a hash of the template names; a change to the
+ * feature set therefore misses the cache, rather than reading stale features.
+ *
+ * Each document is a file under a directory for its mention source and feature set:
+ * a header (magic number, version, feature set hash, number of templates, document id),
+ * the number of pairs and mentions, a bit per pair for its label, and then the
+ * template values of each pair as variable length integers.
+ * Files are written to a temporary file and renamed into place, so several threads
+ * (or runs) may use the same cache; an unreadable entry is a miss.
+ */
+public class FeatureCache {
+  private static final int MAGIC = 0x46436368; // "FCch"
+  private static final int VERSION = 1;
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * The extension of a cached document
+   */
+  public static final String EXTENSION = ".fc";
+
+  private final File directory;
+  private final long featureSetHash;
+  private final int numTemplates;
+
+  /**
+   * Open (or create) a cache.
+   * @param root The root directory of the cache, shared by every mention source and feature set
+   * @param mentionSource The mentions the pairs are drawn from (e.g. gold or predicted)
+   * @param templateNames The name of each template, in the order their values are stored
+   */
+  public FeatureCache(File root, String mentionSource, String[] templateNames){
+    this.numTemplates = templateNames.length;
+    this.featureSetHash = hash(templateNames);
+    this.directory = new File(root, mentionSource.toLowerCase() + "-" + Long.toHexString(featureSetHash));
+  }
+
+  /** A 64 bit FNV-1a hash of the template names, in order */
+  private static long hash(String[] templateNames){
+    long h = 0xcbf29ce484222325L;
+    for(String name : templateNames){
+      for(byte b : name.getBytes(UTF8)){
+        h ^= (b & 0xFF);
+        h *= 0x100000001b3L;
+      }
+      h ^= 0xFF; // (separator; not a byte of UTF-8)
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  /**
+   * The directory this cache reads and writes documents in
+   * @return The directory for the mention source and feature set
+   */
+  public File directory(){ return directory; }
+
+  private File fileOf(String documentId){
+    StringBuilder name = new StringBuilder();
+    for(int i=0; i<documentId.length(); i++){
+      char c = documentId.charAt(i);
+      name.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_');
+    }
+    //(the id is checked on reading, so two ids mapping to the same name just evict each other)
+    return new File(directory, name.append(EXTENSION).toString());
+  }
+
+  //--------------
+  // READING
+  //--------------
+
+  /**
+   * Read the pairs of a document, if they are in the cache.
+   * @param doc The document, with the mentions the pairs were extracted from
+   * @return The template values of every pair (the values of pair p are at
+   * p*numTemplates through (p+1)*numTemplates-1), and the label of every pair;
+   * or null if the document is not in the cache
+   */
+  public Pair<long[],boolean[]> get(Document doc){
+    File file = fileOf(doc.id);
+    if(!file.exists()){ return null; }
+    try {
+      return read(ByteBuffer.wrap(readFully(file)), doc);
+    } catch (IOException e) {
+      return null;
+    } catch (RuntimeException e) {
+      //(truncated or corrupt entry; it will be overwritten)
+      return null;
+    }
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      byte[] bytes = new byte[(int) file.length()];
+      in.readFully(bytes);
+      return bytes;
+    } finally {
+      in.close();
+    }
+  }
+
+  private Pair<long[],boolean[]> read(ByteBuffer buffer, Document doc){
+    //--Header
+    if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION){ return null; }
+    if(buffer.getLong() != featureSetHash || buffer.getInt() != numTemplates){ return null; }
+    byte[] id = new byte[buffer.getInt()];
+    buffer.get(id);
+    if(!new String(id, UTF8).equals(doc.id)){ return null; }
+    int numPairs = buffer.getInt();
+    if(buffer.getInt() != doc.getMentions().size()){ return null; }
+    //--Labels
+    boolean[] labels = new boolean[numPairs];
+    byte[] bits = new byte[(numPairs + 7) / 8];
+    buffer.get(bits);
+    for(int p=0; p<numPairs; p++){
+      labels[p] = (bits[p >> 3] & (1 << (p & 7))) != 0;
+    }
+    //--Values
+    long[] values = new long[numPairs * numTemplates];
+    for(int i=0; i<values.length; i++){ values[i] = readVarLong(buffer); }
+    if(buffer.hasRemaining()){ throw new IllegalStateException("Extra bytes in cached features: " + buffer.remaining()); }
+    return Pair.make(values, labels);
+  }
+
+  private static long readVarLong(ByteBuffer buffer){
+    long zigZag = 0;
+    for(int shift=0; ; shift+=7){
+      byte b = buffer.get();
+      zigZag |= (long) (b & 0x7F) << shift;
+      if(b >= 0){ break; }
+    }
+    return (zigZag >>> 1) ^ -(zigZag & 1);
+  }
+
+  //--------------
+  // WRITING
+  //--------------
+
+  /**
+   * Write the pairs of a document to the cache, replacing any previous entry.
+   * @param doc The document, with the mentions the pairs were extracted from
+   * @param values The template values of every pair, numTemplates per pair
+   * @param labels The label of every pair
+   * @param numPairs The number of pairs (the arrays may be longer)
+   * @throws IOException If the entry could not be written
+   */
+  public void put(Document doc, long[] values, boolean[] labels, int numPairs) throws IOException {
+    //--Encode
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + numPairs * numTemplates);
+    DataOutputStream out = new DataOutputStream(bytes);
+    //(header)
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(featureSetHash);
+    out.writeInt(numTemplates);
+    byte[] id = doc.id.getBytes(UTF8);
+    out.writeInt(id.length);
+    out.write(id);
+    out.writeInt(numPairs);
+    out.writeInt(doc.getMentions().size());
+    //(labels)
+    byte[] bits = new byte[(numPairs + 7) / 8];
+    for(int p=0; p<numPairs; p++){
+      if(labels[p]){ bits[p >> 3] |= (byte) (1 << (p & 7)); }
+    }
+    out.write(bits);
+    //(values)
+    for(int i=0; i<numPairs * numTemplates; i++){ writeVarLong(out, values[i]); }
+    out.flush();
+    //--Write File
+    if(!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()){
+      throw new IOException("Could not create feature cache directory: " + directory);
+    }
+    File file = fileOf(doc.id);
+    File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+    try {
+      OutputStream fileOut = new FileOutputStream(tmp);
+      try {
+        bytes.writeTo(fileOut);
+      } finally {
+        fileOut.close();
+      }
+      if(!tmp.renameTo(file)){
+        //(some platforms will not rename over an existing file)
+        file.delete();
+        if(!tmp.renameTo(file)){ throw new IOException("Could not write cached features: " + file); }
+      }
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+    //(zig-zag, so small negative values are short too)
+    long zigZag = (value << 1) ^ (value >> 63);
+    while((zigZag & ~0x7FL) != 0){
+      out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+      zigZag >>>= 7;
+    }
+    out.writeByte((int) zigZag);
+  }
+}
@@ -0,0 +1,178 @@
+package cs224n.coref;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An alphabet of features: a two-way map between features and contiguous integer
+ * ids from 0 to the number of features. A feature is the pair of a template (an
+ * int, e.g. the position of a feature class among the active features) and the
+ * value the template takes on for some input (a long, e.g. 1 or 0 for an indicator).
+ * Looking up a feature creates no objects, so the features of every mention pair
+ * can be given ids without allocating a Feature for each.
+ *
+ * Ids are added by one thread at a time; idOf() may be called from many threads
+ * at once, provided no ids are being added meanwhile (e.g., once training is done).
+ */
+public class FeatureIndex {
+  private final String[] templateNames;
+  /** The template and value of each id */
+  private int[] templates = new int[16];
+  private long[] values = new long[16];
+  private int size = 0;
+  /** An open-addressing hash table of ids, plus one (0 for an empty slot) */
+  private int[] table = new int[64];
+
+  /**
+   * Create an empty alphabet.
+   * @param templateNames The name of each template, for printing features
+   */
+  public FeatureIndex(String[] templateNames){
+    this.templateNames = templateNames.clone();
+  }
+
+  private static int hash(int template, long value){
+    long h = value * 0x9E3779B97F4A7C15L + template;
+    h ^= h >>> 29;
+    h *= 0xBF58476D1CE4E5B9L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * The id of a feature, if it has one
+   * @param template The template of the feature
+   * @param value The value of the feature
+   * @return The id of the feature, or -1 if it is not in the alphabet
+   */
+  public int idOf(int template, long value){
+    int[] table = this.table;
+    int mask = table.length - 1;
+    for(int slot = hash(template, value) & mask; ; slot = (slot + 1) & mask){
+      int entry = table[slot];
+      if(entry == 0){ return -1; }
+      if(templates[entry-1] == template && values[entry-1] == value){ return entry - 1; }
+    }
+  }
+
+  /**
+   * The id of a feature, giving it the next id if it does not have one yet
+   * @param template The template of the feature
+   * @param value The value of the feature
+   * @return The id of the feature
+   */
+  public synchronized int addAndGetId(int template, long value){
+    int id = idOf(template, value);
+    if(id >= 0){ return id; }
+    //(record the feature)
+    id = size;
+    if(id == templates.length){
+      templates = Arrays.copyOf(templates, 2 * id);
+      values = Arrays.copyOf(values, 2 * id);
+    }
+    templates[id] = template;
+    values[id] = value;
+    size += 1;
+    //(add it to the table)
+    if(2 * size > table.length){
+      rehash(2 * table.length);
+    } else {
+      insert(table, id);
+    }
+    return id;
+  }
+
+  private void insert(int[] table, int id){
+    int mask = table.length - 1;
+    int slot = hash(templates[id], values[id]) & mask;
+    while(table[slot] != 0){ slot = (slot + 1) & mask; }
+    table[slot] = id + 1;
+  }
+
+  private void rehash(int capacity){
+    int[] newTable = new int[capacity];
+    for(int id=0; id<size; id++){ insert(newTable, id); }
+    this.table = newTable;
+  }
+
+  /**
+   * The number of features in the alphabet
+   * @return The number of features; every id is less than this
+   */
+  public int size(){ return size; }
+
+  /**
+   * The number of templates the features are drawn from
+   * @return The number of templates
+   */
+  public int numTemplates(){ return templateNames.length; }
+
+  /**
+   * @param template A template
+   * @return The name of the template
+   */
+  public String templateName(int template){ return templateNames[template]; }
+
+  /**
+   * @param id The id of a feature
+   * @return The template of the feature
+   */
+  public int template(int id){
+    if(id >= size){ throw new IndexOutOfBoundsException("No feature with id " + id); }
+    return templates[id];
+  }
+
+  /**
+   * @param id The id of a feature
+   * @return The value of the feature
+   */
+  public long value(int id){
+    if(id >= size){ throw new IndexOutOfBoundsException("No feature with id " + id); }
+    return values[id];
+  }
+
+  /**
+   * A readable form of a feature
+   * @param id The id of a feature
+   * @return The feature, as the name of its template and its value
+   */
+  public String toString(int id){
+    return templateName(template(id)) + "(" + value(id) + ")";
+  }
+
+  /**
+   * Write the alphabet: its template names, and the template and value of every id, in order
+   * @param out The output to write to
+   * @throws IOException If the alphabet could not be written
+   */
+  public synchronized void write(DataOutput out) throws IOException {
+    out.writeInt(templateNames.length);
+    for(String name : templateNames){ out.writeUTF(name); }
+    out.writeInt(size);
+    for(int id=0; id<size; id++){
+      out.writeInt(templates[id]);
+      out.writeLong(values[id]);
+    }
+  }
+
+  /**
+   * Read an alphabet written by {@link FeatureIndex#write(DataOutput)}; every feature
+   * has the same id it had when it was written.
+   * @param in The input to read from
+   * @return The alphabet
+   * @throws IOException If the alphabet could not be read
+   */
+  public static FeatureIndex read(DataInput in) throws IOException {
+    String[] templateNames = new String[in.readInt()];
+    for(int t=0; t<templateNames.length; t++){ templateNames[t] = in.readUTF(); }
+    FeatureIndex index = new FeatureIndex(templateNames);
+    int size = in.readInt();
+    for(int id=0; id<size; id++){
+      int template = in.readInt();
+      if(template < 0 || template >= templateNames.length){ throw new IOException("Bad template for feature " + id + ": " + template); }
+      if(index.addAndGetId(template, in.readLong()) != id){ throw new IOException("Duplicate feature: " + id); }
+    }
+    return index;
+  }
+}
@@ -0,0 +1,108 @@
+package cs224n.coref;
+
+import java.util.Arrays;
+
+/**
+ * A sparse vector of feature values, indexed by the ids of a {@link FeatureIndex}.
+ * A vector is meant to be reused as a buffer: clear() it, add() the features of
+ * the next input, and read them back (or take a dot product) with no allocation.
+ * Entries are kept in the order they are added, and are not merged; each feature
+ * should be added at most once.
+ * A vector is not thread-safe.
+ */
+public class FeatureVector {
+  private int[] ids;
+  private double[] values;
+  private int size = 0;
+
+  /**
+   * Create an empty vector.
+   */
+  public FeatureVector(){
+    this(16);
+  }
+
+  /**
+   * Create an empty vector, with room for some number of entries before it has to grow.
+   * @param capacity The number of entries to make room for
+   */
+  public FeatureVector(int capacity){
+    this.ids = new int[Math.max(capacity, 1)];
+    this.values = new double[Math.max(capacity, 1)];
+  }
+
+  /**
+   * Remove every entry, keeping the storage for reuse
+   */
+  public void clear(){ size = 0; }
+
+  /**
+   * Add an entry
+   * @param id The id of the feature
+   * @param value The value of the feature
+   */
+  public void add(int id, double value){
+    if(size == ids.length){
+      ids = Arrays.copyOf(ids, 2 * size);
+      values = Arrays.copyOf(values, 2 * size);
+    }
+    ids[size] = id;
+    values[size] = value;
+    size += 1;
+  }
+
+  /**
+   * The number of entries in the vector
+   * @return The number of entries
+   */
+  public int size(){ return size; }
+
+  /**
+   * @param i The position of an entry
+   * @return The id of the feature at that position
+   */
+  public int id(int i){ return ids[i]; }
+
+  /**
+   * @param i The position of an entry
+   * @return The value of the feature at that position
+   */
+  public double value(int i){ return values[i]; }
+
+  /**
+   * The dot product of this vector with a dense vector of weights.
+   * Features with an id beyond the weights have weight 0.
+   * @param weights The weights, indexed by feature id
+   * @return The sum of each value times the weight of its feature
+   */
+  public double dot(double[] weights){
+    double sum = 0.0;
+    for(int i=0; i<size; i++){
+      int id = ids[i];
+      if(id < weights.length){ sum += values[i] * weights[id]; }
+    }
+    return sum;
+  }
+
+  /**
+   * A copy of this vector, with no spare room, for keeping after the buffer is reused
+   * @return A new vector with the same entries
+   */
+  public FeatureVector copy(){
+    FeatureVector copy = new FeatureVector(size);
+    System.arraycopy(ids, 0, copy.ids, 0, size);
+    System.arraycopy(values, 0, copy.values, 0, size);
+    copy.size = size;
+    return copy;
+  }
+
+  @Override
+  public String toString(){
+    StringBuilder b = new StringBuilder("{");
+    for(int i=0; i<size; i++){
+      if(i > 0){ b.append(", "); }
+      b.append(ids[i]).append("=").append(values[i]);
+    }
+    return b.append("}").toString();
+  }
+}
@@ -0,0 +1,642 @@
+package cs224n.coref;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A binary logistic regression model over sparse features: the probability that
+ * an example is positive is the logistic function of a bias plus the dot product
+ * of its features with a dense weight vector, indexed by feature id (see
+ * {@link FeatureIndex}).
+ *
+ * Models are trained on a {@link SparseDataset} by a {@link Trainer}, e.g.:
+ * <pre>
+ *   LogisticRegression model = new LogisticRegression.Trainer()
+ *       .optimizer(LogisticRegression.Optimizer.LBFGS).l2(1.0).threads(8)
+ *       .train(dataset);
+ *   boolean positive = model.score(features) > 0.0;
+ * </pre>
+ * The trainer minimizes the log loss of the examples plus an L2 penalty on the
+ * weights (not the bias), either by L-BFGS or by stochastic gradient descent, on
+ * as many threads as it is given.
+ */
+public class LogisticRegression {
+
+  /**
+   * The optimizers a {@link Trainer} can use.
+   */
+  public static enum Optimizer {
+    /**
+     * Limited memory BFGS over the full objective. The gradient is computed in
+     * parallel over a fixed partition of the examples and summed in order, so the
+     * model does not depend on the number of threads.
+     */
+    LBFGS,
+    /**
+     * Stochastic gradient descent in epochs over a shuffled order of the examples.
+     * With more than one thread, the threads update the shared weights without
+     * locking (as in Hogwild!); the model is then not deterministic.
+     */
+    SGD
+  }
+
+  private final double[] weights;
+  private final double bias;
+
+  /**
+   * Create a model from its parameters.
+   * @param weights The weight of each feature id; the array is not copied
+   * @param bias The bias
+   */
+  public LogisticRegression(double[] weights, double bias){
+    this.weights = weights;
+    this.bias = bias;
+  }
+
+  /**
+   * The weights of the model, indexed by feature id. This is the model's own array.
+   * @return The weights
+   */
+  public double[] weights(){ return weights; }
+
+  /**
+   * @return The bias of the model
+   */
+  public double bias(){ return bias; }
+
+  /**
+   * The number of features the model has weights for
+   * @return The length of the weight vector
+   */
+  public int numFeatures(){ return weights.length; }
+
+  /**
+   * The score (log odds) of an example; it is positive if the example is more likely
+   * positive than not.
+   * @param features The features of the example; ids beyond the weights have weight 0
+   * @return The bias plus the dot product of the features with the weights
+   */
+  public double score(FeatureVector features){
+    return bias + features.dot(weights);
+  }
+
+  /**
+   * The probability that an example is positive
+   * @param features The features of the example
+   * @return The logistic function of the score
+   */
+  public double probability(FeatureVector features){
+    return sigmoid(score(features));
+  }
+
+  /**
+   * Write the model: the number of weights, the weights, and the bias
+   * @param out The output to write to
+   * @throws IOException If the model could not be written
+   */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(weights.length);
+    for(double weight : weights){ out.writeDouble(weight); }
+    out.writeDouble(bias);
+  }
+
+  /**
+   * Read a model written by {@link LogisticRegression#write(DataOutput)}
+   * @param in The input to read from
+   * @return The model
+   * @throws IOException If the model could not be read
+   */
+  public static LogisticRegression read(DataInput in) throws IOException {
+    int numFeatures = in.readInt();
+    if(numFeatures < 0){ throw new IOException("Bad number of features: " + numFeatures); }
+    double[] weights = new double[numFeatures];
+    for(int f=0; f<numFeatures; f++){ weights[f] = in.readDouble(); }
+    return new LogisticRegression(weights, in.readDouble());
+  }
+
+  private static double sigmoid(double score){
+    if(score >= 0.0){
+      return 1.0 / (1.0 + Math.exp(-score));
+    } else {
+      double e = Math.exp(score);
+      return e / (1.0 + e);
+    }
+  }
+
+  /** The log loss of an example with the given score, computed without overflow */
+  private static double logLoss(double score, boolean label){
+    double margin = label ? score : -score;
+    return margin > 0.0 ? Math.log1p(Math.exp(-margin)) : -margin + Math.log1p(Math.exp(margin));
+  }
+
+  //--------------
+  // TRAINING
+  //--------------
+
+  /**
+   * Trains logistic regression models. Settings are chained, and have defaults
+   * suitable for a few hundred thousand examples:
+   * L-BFGS, an L2 penalty of 1.0, one thread, 200 iterations, a relative tolerance
+   * of 1e-6, and no early stopping.
+   *
+   * Early stopping holds out a fraction of the examples (every k-th one) and
+   * returns the weights with the lowest log loss on them, stopping once the loss
+   * has not improved for some number of iterations (the patience).
+   *
+   * A trainer is not thread-safe; it uses its own threads while training.
+   */
+  public static class Trainer {
+    /**
+     * The examples are split into blocks for computing the gradient: as many as there are
+     * blocks of MIN_PARTITION_ROWS, up to MAX_PARTITIONS, and few enough that their partial
+     * gradients fit in MAX_PARTITION_DOUBLES. The blocks depend only on the data, never on
+     * the number of threads.
+     */
+    private static final int MAX_PARTITIONS = 256;
+    private static final int MIN_PARTITION_ROWS = 256;
+    private static final long MAX_PARTITION_DOUBLES = 1L << 25;
+
+    private Optimizer optimizer = Optimizer.LBFGS;
+    private double l2 = 1.0;
+    private int threads = 1;
+    private int maxIterations = 200;
+    private double tolerance = 1e-6;
+    private double heldOutFraction = 0.0;
+    private int patience = 5;
+    private int memory = 10;
+    private double learningRate = 0.1;
+    private long seed = 42L;
+    //(statistics of the last run)
+    private int iterations = 0;
+    private double objective = Double.NaN;
+    private double heldOutLoss = Double.NaN;
+
+    /**
+     * Create a trainer with the default settings.
+     */
+    public Trainer(){ }
+
+    /**
+     * @param optimizer The optimizer to train with
+     * @return This trainer
+     */
+    public Trainer optimizer(Optimizer optimizer){ this.optimizer = optimizer; return this; }
+
+    /**
+     * @param l2 The strength of the L2 penalty: the objective includes l2/2 times the squared norm of the weights
+     * @return This trainer
+     */
+    public Trainer l2(double l2){
+      if(l2 < 0.0){ throw new IllegalArgumentException("Negative L2 penalty: " + l2); }
+      this.l2 = l2;
+      return this;
+    }
+
+    /**
+     * @param threads The number of threads to train on
+     * @return This trainer
+     */
+    public Trainer threads(int threads){ this.threads = Math.max(1, threads); return this; }
+
+    /**
+     * @param maxIterations The most iterations (L-BFGS) or epochs (SGD) to run
+     * @return This trainer
+     */
+    public Trainer maxIterations(int maxIterations){ this.maxIterations = maxIterations; return this; }
+
+    /**
+     * @param tolerance Stop once an iteration improves the objective by less than this fraction of it
+     * @return This trainer
+     */
+    public Trainer tolerance(double tolerance){ this.tolerance = tolerance; return this; }
+
+    /**
+     * Hold out examples for early stopping.
+     * @param heldOutFraction The fraction of the examples to hold out, from 0 (no early stopping) to 0.5
+     * @param patience The number of iterations without improvement on the held out examples to stop after
+     * @return This trainer
+     */
+    public Trainer earlyStopping(double heldOutFraction, int patience){
+      if(heldOutFraction < 0.0 || heldOutFraction > 0.5){ throw new IllegalArgumentException("Held out fraction not in [0, 0.5]: " + heldOutFraction); }
+      this.heldOutFraction = heldOutFraction;
+      this.patience = Math.max(1, patience);
+      return this;
+    }
+
+    /**
+     * @param memory The number of corrections L-BFGS keeps
+     * @return This trainer
+     */
+    public Trainer memory(int memory){ this.memory = Math.max(1, memory); return this; }
+
+    /**
+     * @param learningRate The initial learning rate of SGD; it decays as 1/(1+epoch)
+     * @return This trainer
+     */
+    public Trainer learningRate(double learningRate){ this.learningRate = learningRate; return this; }
+
+    /**
+     * @param seed The seed for shuffling the examples (SGD)
+     * @return This trainer
+     */
+    public Trainer seed(long seed){ this.seed = seed; return this; }
+
+    /**
+     * @return The number of iterations (or epochs) the last call to train() ran
+     */
+    public int iterations(){ return iterations; }
+
+    /**
+     * @return The objective (penalized log loss on the training examples) of the last model trained
+     */
+    public double objective(){ return objective; }
+
+    /**
+     * @return The mean log loss of the last model trained on the held out examples, or NaN if none were held out
+     */
+    public double heldOutLoss(){ return heldOutLoss; }
+
+    /**
+     * Train a model.
+     * @param data The examples to train on
+     * @return The trained model, with a weight for every feature of the data
+     */
+    public LogisticRegression train(SparseDataset data){
+      ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+      try {
+        Problem problem = new Problem(data, heldOutFraction, l2, pool);
+        double[] theta = (optimizer == Optimizer.LBFGS) ? lbfgs(problem) : sgd(problem, pool);
+        //(statistics)
+        this.objective = problem.evaluate(theta, null);
+        this.heldOutLoss = problem.numHeldOut > 0 ? problem.heldOutLoss(theta) : Double.NaN;
+        //(model)
+        int numFeatures = data.numFeatures();
+        return new LogisticRegression(Arrays.copyOf(theta, numFeatures), theta[numFeatures]);
+      } finally {
+        if(pool != null){ pool.shutdownNow(); }
+      }
+    }
+
+    /**
+     * Minimize the objective with L-BFGS, with a backtracking line search.
+     * @return The parameters: the weights, followed by the bias
+     */
+    private double[] lbfgs(Problem problem){
+      //--Variables
+      int n = problem.dimension;
+      double[] x = new double[n];
+      double[] gradient = new double[n];
+      double value = problem.evaluate(x, gradient);
+      double[] direction = new double[n];
+      double[] nextX = new double[n];
+      double[] nextGradient = new double[n];
+      double[][] s = new double[memory][];
+      double[][] y = new double[memory][];
+      double[] rho = new double[memory];
+      double[] alpha = new double[memory];
+      int numCorrections = 0;
+      int newest = -1;
+      EarlyStopping stopping = new EarlyStopping(problem);
+      stopping.record(x);
+      //--Iterate
+      this.iterations = 0;
+      while(iterations < maxIterations){
+        iterations += 1;
+        //(search direction: the two loop recursion)
+        for(int i=0; i<n; i++){ direction[i] = -gradient[i]; }
+        for(int k=0; k<numCorrections; k++){
+          int c = (newest - k + memory) % memory;
+          alpha[c] = rho[c] * dot(s[c], direction);
+          axpy(-alpha[c], y[c], direction);
+        }
+        if(numCorrections > 0){
+          scale(dot(s[newest], y[newest]) / dot(y[newest], y[newest]), direction);
+        } else {
+          double norm = Math.sqrt(dot(gradient, gradient));
+          if(norm == 0.0){ break; }
+          scale(1.0 / norm, direction);
+        }
+        for(int k=numCorrections-1; k>=0; k--){
+          int c = (newest - k + memory) % memory;
+          double beta = rho[c] * dot(y[c], direction);
+          axpy(alpha[c] - beta, s[c], direction);
+        }
+        double slope = dot(gradient, direction);
+        if(slope >= 0.0){
+          //(not a descent direction; forget the curvature and follow the gradient)
+          numCorrections = 0;
+          for(int i=0; i<n; i++){ direction[i] = -gradient[i]; }
+          slope = dot(gradient, direction);
+        }
+        //(line search)
+        double step = 1.0;
+        double nextValue = Double.NaN;
+        boolean found = false;
+        for(int tries=0; tries<40; tries++){
+          for(int i=0; i<n; i++){ nextX[i] = x[i] + step * direction[i]; }
+          nextValue = problem.evaluate(nextX, nextGradient);
+          if(nextValue <= value + 1e-4 * step * slope){
+            found = true;
+            break;
+          }
+          step *= 0.5;
+        }
+        if(!found){ break; }
+        //(update the corrections, if the curvature is positive)
+        double sy = 0.0;
+        for(int i=0; i<n; i++){ sy += (nextX[i] - x[i]) * (nextGradient[i] - gradient[i]); }
+        if(sy > 1e-12){
+          newest = (newest + 1) % memory;
+          if(s[newest] == null){
+            s[newest] = new double[n];
+            y[newest] = new double[n];
+          }
+          for(int i=0; i<n; i++){
+            s[newest][i] = nextX[i] - x[i];
+            y[newest][i] = nextGradient[i] - gradient[i];
+          }
+          rho[newest] = 1.0 / sy;
+          numCorrections = Math.min(numCorrections + 1, memory);
+        }
+        //(move)
+        double[] tmp = x; x = nextX; nextX = tmp;
+        tmp = gradient; gradient = nextGradient; nextGradient = tmp;
+        double improvement = value - nextValue;
+        value = nextValue;
+        //(stop?)
+        if(stopping.record(x)){ break; }
+        if(improvement < tolerance * Math.max(1.0, Math.abs(value))){ break; }
+      }
+      //--Return
+      return stopping.best(x);
+    }
+
+    /**
+     * Minimize the objective with stochastic gradient descent, on every thread of the pool.
+     * The L2 penalty of a feature is spread over the examples which have it.
+     * @return The parameters: the weights, followed by the bias
+     */
+    private double[] sgd(final Problem problem, ForkJoinPool pool){
+      //--Variables
+      final SparseDataset data = problem.data;
+      final int biasIndex = problem.dimension - 1;
+      final double[] theta = new double[problem.dimension];
+      //(the training examples, to shuffle)
+      final int[] order = new int[data.size() - problem.numHeldOut];
+      int numTraining = 0;
+      for(int r=0; r<data.size(); r++){
+        if(!problem.heldOut[r]){ order[numTraining++] = r; }
+      }
+      //(the penalty per occurrence of each feature)
+      final double[] penalty = new double[problem.dimension];
+      for(int r : order){
+        for(int i=data.rowStart(r); i<data.rowEnd(r); i++){ penalty[data.id(i)] += 1.0; }
+      }
+      for(int f=0; f<biasIndex; f++){
+        if(penalty[f] > 0.0){ penalty[f] = l2 / penalty[f]; }
+      }
+      Random random = new Random(seed);
+      EarlyStopping stopping = new EarlyStopping(problem);
+      stopping.record(theta);
+      double value = problem.evaluate(theta, null);
+      //--Epochs
+      this.iterations = 0;
+      while(iterations < maxIterations){
+        //(shuffle)
+        for(int i=order.length-1; i>0; i--){
+          int j = random.nextInt(i + 1);
+          int tmp = order[i]; order[i] = order[j]; order[j] = tmp;
+        }
+        final double rate = learningRate / (1.0 + iterations);
+        iterations += 1;
+        //(run the epoch, each thread on its share of the order)
+        List<Callable<Void>> shares = new ArrayList<Callable<Void>>(threads);
+        for(int t=0; t<threads; t++){
+          final int begin = (int) ((long) order.length * t / threads);
+          final int end = (int) ((long) order.length * (t+1) / threads);
+          shares.add(new Callable<Void>(){
+            public Void call() {
+              for(int k=begin; k<end; k++){
+                int r = order[k];
+                double score = theta[biasIndex] + data.dot(r, theta);
+                double error = sigmoid(score) - (data.label(r) ? 1.0 : 0.0);
+                for(int i=data.rowStart(r); i<data.rowEnd(r); i++){
+                  int f = data.id(i);
+                  theta[f] -= rate * (error * data.value(i) + penalty[f] * theta[f]);
+                }
+                theta[biasIndex] -= rate * error;
+              }
+              return null;
+            }
+          });
+        }
+        problem.runAll(shares);
+        //(stop?)
+        double nextValue = problem.evaluate(theta, null);
+        double improvement = value - nextValue;
+        value = nextValue;
+        if(stopping.record(theta)){ break; }
+        if(Math.abs(improvement) < tolerance * Math.max(1.0, Math.abs(value))){ break; }
+      }
+      //--Return
+      return stopping.best(theta);
+    }
+
+    /**
+     * Tracks the loss on the held out examples, and the best parameters so far.
+     */
+    private class EarlyStopping {
+      private final Problem problem;
+      private double bestLoss = Double.POSITIVE_INFINITY;
+      private double[] best = null;
+      private int sinceBest = 0;
+
+      private EarlyStopping(Problem problem){ this.problem = problem; }
+
+      /**
+       * Record the parameters after an iteration
+       * @return True if training should stop
+       */
+      private boolean record(double[] theta){
+        if(problem.numHeldOut == 0){ return false; }
+        double loss = problem.heldOutLoss(theta);
+        if(loss < bestLoss){
+          bestLoss = loss;
+          best = theta.clone();
+          sinceBest = 0;
+          return false;
+        }
+        sinceBest += 1;
+        return sinceBest >= patience;
+      }
+
+      /**
+       * @return The parameters to keep: the best on the held out examples, or the last ones
+       */
+      private double[] best(double[] last){
+        return best == null ? last : best;
+      }
+    }
+  }
+
+  /**
+   * The objective for a dataset: the log loss of its training (not held out) examples,
+   * plus the L2 penalty. Parameters are the weights followed by the bias.
+   */
+  private static class Problem {
+    private final SparseDataset data;
+    private final int dimension;
+    private final boolean[] heldOut;
+    private final int numHeldOut;
+    private final double l2;
+    private final ForkJoinPool pool;
+    /** The bounds of each partition of the examples, and its share of the objective */
+    private final int[] bounds;
+    private final double[] partialValues;
+    private final double[][] partialGradients;
+
+    private Problem(SparseDataset data, double heldOutFraction, double l2, ForkJoinPool pool){
+      this.data = data;
+      this.dimension = data.numFeatures() + 1;
+      this.l2 = l2;
+      this.pool = pool;
+      //(hold out every k-th example)
+      this.heldOut = new boolean[data.size()];
+      int count = 0;
+      if(heldOutFraction > 0.0){
+        int stride = Math.max(2, (int) Math.round(1.0 / heldOutFraction));
+        for(int r=stride-1; r<data.size(); r+=stride){
+          heldOut[r] = true;
+          count += 1;
+        }
+      }
+      this.numHeldOut = count;
+      //(partitions)
+      long byRows = (data.size() + Trainer.MIN_PARTITION_ROWS - 1) / Trainer.MIN_PARTITION_ROWS;
+      long byMemory = Trainer.MAX_PARTITION_DOUBLES / dimension;
+      int numPartitions = (int) Math.max(1, Math.min(Trainer.MAX_PARTITIONS, Math.min(byRows, byMemory)));
+      this.bounds = new int[numPartitions + 1];
+      for(int p=0; p<=numPartitions; p++){ bounds[p] = (int) ((long) data.size() * p / numPartitions); }
+      this.partialValues = new double[numPartitions];
+      this.partialGradients = new double[numPartitions][];
+    }
+
+    /**
+     * Run tasks on the pool (or on this thread, if there is no pool), and wait for them
+     */
+    private void runAll(List<Callable<Void>> tasks){
+      if(pool == null){
+        try {
+          for(Callable<Void> task : tasks){ task.call(); }
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+        return;
+      }
+      try {
+        for(Future<Void> future : pool.invokeAll(tasks)){ future.get(); }
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    /**
+     * The objective, and optionally its gradient
+     * @param theta The parameters
+     * @param gradient Filled with the gradient, if not null
+     * @return The value of the objective
+     */
+    private double evaluate(final double[] theta, final double[] gradient){
+      //--Partitions
+      final int biasIndex = dimension - 1;
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(partialValues.length);
+      for(int p=0; p<partialValues.length; p++){
+        final int partition = p;
+        tasks.add(new Callable<Void>(){
+          public Void call() {
+            double[] partialGradient = null;
+            if(gradient != null){
+              if(partialGradients[partition] == null){ partialGradients[partition] = new double[dimension]; }
+              partialGradient = partialGradients[partition];
+              Arrays.fill(partialGradient, 0.0);
+            }
+            double value = 0.0;
+            for(int r=bounds[partition]; r<bounds[partition+1]; r++){
+              if(heldOut[r]){ continue; }
+              boolean label = data.label(r);
+              double score = theta[biasIndex] + data.dot(r, theta);
+              value += logLoss(score, label);
+              if(partialGradient != null){
+                double error = sigmoid(score) - (label ? 1.0 : 0.0);
+                for(int i=data.rowStart(r); i<data.rowEnd(r); i++){
+                  partialGradient[data.id(i)] += error * data.value(i);
+                }
+                partialGradient[biasIndex] += error;
+              }
+            }
+            partialValues[partition] = value;
+            return null;
+          }
+        });
+      }
+      runAll(tasks);
+      //--Sum
+      //(in partition order, so the sum does not depend on the threads)
+      double value = 0.0;
+      if(gradient != null){ Arrays.fill(gradient, 0.0); }
+      for(int p=0; p<partialValues.length; p++){
+        value += partialValues[p];
+        if(gradient != null){ axpy(1.0, partialGradients[p], gradient); }
+      }
+      //(penalty; not on the bias)
+      for(int f=0; f<biasIndex; f++){
+        value += 0.5 * l2 * theta[f] * theta[f];
+        if(gradient != null){ gradient[f] += l2 * theta[f]; }
+      }
+      return value;
+    }
+
+    /**
+     * The mean log loss of the held out examples
+     * @param theta The parameters
+     * @return The mean loss
+     */
+    private double heldOutLoss(double[] theta){
+      int biasIndex = dimension - 1;
+      double loss = 0.0;
+      for(int r=0; r<data.size(); r++){
+        if(heldOut[r]){ loss += logLoss(theta[biasIndex] + data.dot(r, theta), data.label(r)); }
+      }
+      return loss / numHeldOut;
+    }
+  }
+
+  private static double dot(double[] a, double[] b){
+    double sum = 0.0;
+    for(int i=0; i<a.length; i++){ sum += a[i] * b[i]; }
+    return sum;
+  }
+
+  /** y += a*x */
+  private static void axpy(double a, double[] x, double[] y){
+    for(int i=0; i<x.length; i++){ y[i] += a * x[i]; }
+  }
+
+  private static void scale(double a, double[] x){
+    for(int i=0; i<x.length; i++){ x[i] *= a; }
+  }
+}
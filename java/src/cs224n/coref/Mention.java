@@ -44,10 +44,32 @@ public class Mention implements Serializable, Decodable {
   public final int headWordIndex;
 
   /**
-   * Marks the entity this mention is coreferent with
+   * Marks the entity this mention is coreferent with.
+   * This is scoped to the document: a document (with its mentions) is only
+   * ever clustered by one thread at a time, and is handed to the scorer through
+   * a Future, so no further synchronization is needed.
    */
   protected Entity corefferentWith = null;
 
+  /**
+   * The cached attributes of this mention; computed on first use (or when the
+   * mentions of a document are set), and recomputed after deserialization.
+   * Every field of a profile is final, so racing threads at worst compute it twice.
+   */
+  private transient MentionProfile profile = null;
+
+  /**
+   * The index of this mention in the mentions of its document; set when the
+   * mentions of the document are set.
+   */
+  int index = -1;
+  /**
+   * The index of the sentence in its document, and the index of the first word of
+   * the mention counting every token of the document; set when the mention is created.
+   */
+  private final int sentenceIndex;
+  private final int tokenOffset;
+
   /**
    * Create a new mention from the necessary parameters.
    * You should not have to use this method.
@@ -65,6 +87,8 @@ public class Mention implements Serializable, Decodable {
     this.endIndexExclusive = endExclusive;
     this.parse = parse;
     this.headWordIndex = headWordIndex;
+    this.sentenceIndex = sentence.index();
+    this.tokenOffset = sentenceIndex < 0 ? -1 : sentence.tokenOffset() + beginInclusive;
   }
 
   /**
@@ -89,14 +113,19 @@ public class Mention implements Serializable, Decodable {
    * A String reproduction of this mention
    * @return The gloss for this mention
    */
-  public String gloss(){
-    StringBuilder b = new StringBuilder();
-    List<String> words = text();
-    for(int i=0; i<words.size()-1; i++){
-      b.append(words.get(i)).append(" ");
+  public String gloss(){ return profile().gloss; }
+
+  /**
+   * The precomputed attributes of this mention (gloss, head word tags, pronoun, etc.)
+   * @return The profile of this mention
+   */
+  public MentionProfile profile(){
+    MentionProfile profile = this.profile;
+    if(profile == null){
+      profile = new MentionProfile(this);
+      this.profile = profile;
     }
-    if(words.size() > 0){ b.append(words.get(words.size()-1)); }
-    return b.toString();
+    return profile;
   }
 
   /**
@@ -107,6 +136,22 @@ public class Mention implements Serializable, Decodable {
     return endIndexExclusive - beginIndexInclusive;
   }
 
+  /**
+   * The index of the sentence of this mention, in the sentences of its document
+   * @return The index of the mention's sentence, or -1 if the sentence is not part of a document
+   */
+  public int sentenceIndex(){
+    return sentenceIndex;
+  }
+
+  /**
+   * The index of the first word of this mention, counting every token of the document
+   * @return The token offset of the mention in its document, or -1 if the sentence is not part of a document
+   */
+  public int tokenOffset(){
+    return tokenOffset;
+  }
+
   /**
    * Mark this mention as referring to an entity.
    * @param cluster The entity to refer to
@@ -146,6 +191,35 @@ public class Mention implements Serializable, Decodable {
     return markCoreferent(cluster);
   }
 
+  /**
+   * Forget the coreference for this mention, so that the document it is in can be
+   * clustered again (e.g., when a cached document is tested a second time).
+   */
+  public void removeCoreference() {
+    if (corefferentWith != null) {
+      corefferentWith.remove(this);
+      corefferentWith = null;
+    }
+  }
+
+  /**
+   * Forget the coreference for this mention, as removeCoreference() does, but leave
+   * the mention in its entity if that is one of the given entities. This is for
+   * entities which must keep their mentions, e.g. the gold clusters, which a
+   * training pass may have marked mentions coreferent with.
+   * @param keep The entities to leave unchanged (compared by identity)
+   */
+  public void removeCoreference(List<Entity> keep) {
+    if (corefferentWith != null) {
+      boolean kept = false;
+      for (Entity entity : keep) {
+        if (entity == corefferentWith) { kept = true; }
+      }
+      if (!kept) { corefferentWith.remove(this); }
+      corefferentWith = null;
+    }
+  }
+
   /**
    * Mark this mention as a singleton (for now, at least)
    * @return The clustered mention associated with this assignment
@@ -176,7 +250,8 @@ public class Mention implements Serializable, Decodable {
   }
   @Override
   public int hashCode(){
-    return this.sentence.hashCode() ^ beginIndexInclusive ^ (endIndexExclusive << 15);
+    //(equal mentions share a sentence, and so its index)
+    return 31 * (31 * sentenceIndex + beginIndexInclusive) + endIndexExclusive;
   }
   @Override
   public String toString(){
@@ -189,14 +264,7 @@ public class Mention implements Serializable, Decodable {
   private static final Pattern encodePattern = Pattern.compile(" *sid=([0-9]+) spanning ([0-9]+) until ([0-9]+) headed by ([0-9]+) parsed as (.*)$");
   public String encode() {
     //(find sentence)
-    int sentenceIndex = 0;
-    for(Sentence s : doc.sentences){
-      if(s == sentence){
-        break;
-      } else {
-        sentenceIndex += 1;
-      }
-    }
+    int sentenceIndex = doc.indexOfSentence(sentence);
     //(build structure)
     StringBuilder b = new StringBuilder();
     b.append("sid=").append(sentenceIndex).append(" spanning ")
@@ -0,0 +1,261 @@
+package cs224n.coref;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A cursor over pairs of mentions in a document, for training loops which look at
+ * every pair of some kind. Pairs are given as the indices of the two mentions in
+ * the document's mentions, and the cursor creates no objects as it moves, e.g.:
+ * <pre>
+ *   MentionPairs pairs = MentionPairs.withinEntities(doc, clusters);
+ *   while(pairs.next()){
+ *     Mention a = pairs.firstMention();
+ *     Mention b = pairs.secondMention();
+ *     int distance = Math.abs(pairs.first() - pairs.second());
+ *   }
+ * </pre>
+ * Mentions of the entities which are not mentions of the document (e.g., gold
+ * mentions which the mention extractor missed) are not part of any pair.
+ */
+public abstract class MentionPairs {
+  /** The mentions of the document */
+  protected final List<Mention> mentions;
+  /** The index of the first mention of the current pair */
+  protected int first = -1;
+  /** The index of the second mention of the current pair */
+  protected int second = -1;
+
+  protected MentionPairs(Document doc){
+    this.mentions = doc.getMentions();
+  }
+
+  /**
+   * Move to the next pair.
+   * @return False if there are no more pairs
+   */
+  public abstract boolean next();
+
+  /**
+   * Move back to before the first pair, to go over the pairs again.
+   */
+  public abstract void reset();
+
+  /**
+   * Skip the remaining pairs with the current first mention; the next call to
+   * {@link MentionPairs#next()} moves on to the next first mention.
+   * For antecedents, this stops the search for the current mention's antecedent.
+   */
+  public abstract void skipFirst();
+
+  /**
+   * The index of the first mention of the current pair, in the document's mentions
+   * @return The index of the first mention
+   */
+  public int first(){ return first; }
+
+  /**
+   * The index of the second mention of the current pair, in the document's mentions
+   * @return The index of the second mention
+   */
+  public int second(){ return second; }
+
+  /**
+   * The first mention of the current pair
+   * @return The first mention
+   */
+  public Mention firstMention(){ return mentions.get(first); }
+
+  /**
+   * The second mention of the current pair
+   * @return The second mention
+   */
+  public Mention secondMention(){ return mentions.get(second); }
+
+  /**
+   * Every ordered pair of distinct mentions in the same entity; both (a,b) and (b,a)
+   * are given, as with {@link Entity#orderedMentionPairs()}.
+   * @param doc The document, with its mentions set
+   * @param entities The entities (e.g., the gold clusters)
+   * @return A cursor over the pairs
+   */
+  public static MentionPairs withinEntities(Document doc, Collection<Entity> entities){
+    return new WithinEntities(doc, entities);
+  }
+
+  /**
+   * Every ordered pair of mentions in different entities.
+   * @param doc The document, with its mentions set
+   * @param entities The entities (e.g., the gold clusters)
+   * @return A cursor over the pairs
+   */
+  public static MentionPairs acrossEntities(Document doc, Collection<Entity> entities){
+    return new AcrossEntities(doc, entities);
+  }
+
+  /**
+   * Every mention, paired with each of the mentions before it, nearest first.
+   * The first mention of a pair is the later one (the anaphor), and the second
+   * its candidate antecedent.
+   * @param doc The document, with its mentions set
+   * @param window The number of preceding mentions to pair each mention with; 0 for all of them
+   * @return A cursor over the pairs
+   */
+  public static MentionPairs antecedents(Document doc, int window){
+    return new Antecedents(doc, window);
+  }
+
+  //--------------
+  // CURSORS
+  //--------------
+
+  /**
+   * The members of each entity, as sorted mention indices, and the entity of each mention.
+   */
+  private static abstract class EntityPairs extends MentionPairs {
+    protected final int[][] members;
+    protected final int[] entityOf;
+
+    protected EntityPairs(Document doc, Collection<Entity> entities){
+      super(doc);
+      this.entityOf = new int[mentions.size()];
+      for(int i=0; i<entityOf.length; i++){ entityOf[i] = -1; }
+      this.members = new int[entities.size()][];
+      int e = 0;
+      for(Entity entity : entities){
+        int[] indices = new int[entity.mentions.size()];
+        int size = 0;
+        for(Mention m : entity.mentions){
+          int index = doc.findMention(m);
+          if(index >= 0){
+            indices[size++] = index;
+            entityOf[index] = e;
+          }
+        }
+        members[e] = Arrays.copyOf(indices, size);
+        Arrays.sort(members[e]);
+        e += 1;
+      }
+    }
+  }
+
+  private static final class WithinEntities extends EntityPairs {
+    private int entity;
+    private int a;
+    private int b;
+
+    private WithinEntities(Document doc, Collection<Entity> entities){
+      super(doc, entities);
+      reset();
+    }
+
+    @Override
+    public void reset(){
+      entity = 0;
+      a = 0;
+      b = -1;
+      first = -1;
+      second = -1;
+    }
+
+    @Override
+    public void skipFirst(){
+      if(entity < members.length){ b = members[entity].length; }
+    }
+
+    @Override
+    public boolean next(){
+      while(entity < members.length){
+        int[] cluster = members[entity];
+        //(advance the second mention, skipping the first)
+        b += 1;
+        if(b == a){ b += 1; }
+        if(b >= cluster.length){
+          //(advance the first mention)
+          a += 1;
+          b = -1;
+          if(a >= cluster.length){
+            entity += 1;
+            a = 0;
+          }
+          continue;
+        }
+        first = cluster[a];
+        second = cluster[b];
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static final class AcrossEntities extends EntityPairs {
+    private AcrossEntities(Document doc, Collection<Entity> entities){
+      super(doc, entities);
+      reset();
+    }
+
+    @Override
+    public void reset(){
+      first = 0;
+      second = -1;
+    }
+
+    @Override
+    public void skipFirst(){
+      second = entityOf.length;
+    }
+
+    @Override
+    public boolean next(){
+      while(first < entityOf.length){
+        if(entityOf[first] >= 0){
+          //(advance the second mention, to one in another entity)
+          second += 1;
+          while(second < entityOf.length && (entityOf[second] < 0 || entityOf[second] == entityOf[first])){
+            second += 1;
+          }
+          if(second < entityOf.length){ return true; }
+        }
+        //(advance the first mention)
+        first += 1;
+        second = -1;
+      }
+      return false;
+    }
+  }
+
+  private static final class Antecedents extends MentionPairs {
+    private final int window;
+
+    private Antecedents(Document doc, int window){
+      super(doc);
+      this.window = window;
+      reset();
+    }
+
+    @Override
+    public void reset(){
+      first = 0;
+      second = 0;
+    }
+
+    @Override
+    public void skipFirst(){
+      second = 0;
+    }
+
+    @Override
+    public boolean next(){
+      while(first < mentions.size()){
+        //(advance the antecedent, backwards)
+        second -= 1;
+        if(second >= 0 && (window <= 0 || first - second <= window)){ return true; }
+        //(advance the anaphor)
+        first += 1;
+        second = first;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package cs224n.coref;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A partition of the mentions of a document into clusters, for systems which
+ * build their clusters through many merges. Clusters are kept as a union-find
+ * structure over the mentions' indices in the document (with path compression
+ * and union by size), so that merging two clusters, or asking whether two
+ * mentions are in the same cluster, takes (nearly) constant time.
+ *
+ * Nothing is marked on the mentions themselves until
+ * {@link MentionPartition#toClusteredMentions()} is called, once clustering is done.
+ * A partition is not thread-safe.
+ */
+public class MentionPartition {
+  private final List<Mention> mentions;
+  /** The parent of each mention in its cluster's tree; a root is its own parent */
+  private final int[] parent;
+  /** The size of the cluster of each root */
+  private final int[] size;
+  /** The next mention in each mention's cluster, as a circular list */
+  private final int[] next;
+  private int numClusters;
+
+  /**
+   * Create a partition of the mentions of a document, with every mention in a
+   * cluster of its own.
+   * @param doc The document, with its mentions set
+   */
+  public MentionPartition(Document doc){
+    this.mentions = doc.getMentions();
+    int n = mentions.size();
+    this.parent = new int[n];
+    this.size = new int[n];
+    this.next = new int[n];
+    for(int i=0; i<n; i++){
+      parent[i] = i;
+      size[i] = 1;
+      next[i] = i;
+    }
+    this.numClusters = n;
+  }
+
+  /**
+   * The number of mentions in the partition
+   * @return The number of mentions in the document
+   */
+  public int size(){ return mentions.size(); }
+
+  /**
+   * The mention at an index
+   * @param i The index of the mention in the document
+   * @return The mention
+   */
+  public Mention mention(int i){ return mentions.get(i); }
+
+  /**
+   * The number of (non-empty) clusters in the partition
+   * @return The number of clusters
+   */
+  public int numClusters(){ return numClusters; }
+
+  /**
+   * The representative of the cluster a mention is in
+   * @param i The index of the mention in the document
+   * @return The index of the representative mention; the same for every mention in the cluster
+   */
+  public int find(int i){
+    //(find root)
+    int root = i;
+    while(parent[root] != root){ root = parent[root]; }
+    //(compress path)
+    while(parent[i] != root){
+      int up = parent[i];
+      parent[i] = root;
+      i = up;
+    }
+    return root;
+  }
+
+  /**
+   * Whether two mentions are in the same cluster
+   * @param a The index of the first mention
+   * @param b The index of the second mention
+   * @return True if they are in the same cluster
+   */
+  public boolean sameCluster(int a, int b){
+    return find(a) == find(b);
+  }
+
+  /**
+   * Merge the clusters of two mentions
+   * @param a The index of the first mention
+   * @param b The index of the second mention
+   * @return True if the clusters were merged; false if they were already the same cluster
+   */
+  public boolean union(int a, int b){
+    int rootA = find(a);
+    int rootB = find(b);
+    if(rootA == rootB){ return false; }
+    //(attach the smaller tree under the larger)
+    if(size[rootA] < size[rootB]){
+      int tmp = rootA;
+      rootA = rootB;
+      rootB = tmp;
+    }
+    parent[rootB] = rootA;
+    size[rootA] += size[rootB];
+    //(splice the member lists)
+    int tmp = next[rootA];
+    next[rootA] = next[rootB];
+    next[rootB] = tmp;
+    numClusters -= 1;
+    return true;
+  }
+
+  /**
+   * The number of mentions in a mention's cluster
+   * @param i The index of the mention
+   * @return The size of its cluster
+   */
+  public int clusterSize(int i){
+    return size[find(i)];
+  }
+
+  /**
+   * The mentions in a mention's cluster, in no particular order.
+   * @param i The index of the mention
+   * @return The mentions in its cluster (including itself)
+   */
+  public List<Mention> cluster(int i){
+    int[] members = new int[clusterSize(i)];
+    int k = 0;
+    int member = i;
+    do {
+      members[k++] = member;
+      member = next[member];
+    } while(member != i);
+    return new MemberList(members);
+  }
+
+  /**
+   * Mark every mention as coreferent with an entity for its cluster, creating
+   * the entities.
+   * This should be called once, when clustering is done.
+   * @return A clustered mention for every mention, in the order of the document's mentions
+   */
+  public List<ClusteredMention> toClusteredMentions(){
+    Entity[] entities = new Entity[mentions.size()];
+    List<ClusteredMention> clustered = new ArrayList<ClusteredMention>(mentions.size());
+    for(int i=0; i<mentions.size(); i++){
+      int root = find(i);
+      if(entities[root] == null){ entities[root] = new Entity(mentions); }
+      clustered.add(mentions.get(i).markCoreferent(entities[root]));
+    }
+    return clustered;
+  }
+
+  private class MemberList extends AbstractList<Mention> implements RandomAccess {
+    private final int[] members;
+    private MemberList(int[] members){ this.members = members; }
+    @Override
+    public Mention get(int index){ return mentions.get(members[index]); }
+    @Override
+    public int size(){ return members.length; }
+  }
+}
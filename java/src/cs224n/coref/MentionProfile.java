@@ -0,0 +1,179 @@
+package cs224n.coref;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The attributes of a mention which coreference systems look at over and over
+ * again (its gloss, lowercased words, head word tags, pronoun, number, etc.),
+ * computed once per mention rather than once per pair of mentions compared.
+ * A profile is immutable, and is obtained through {@link Mention#profile()}.
+ *
+ * The strings compared between mentions also have ids (see {@link Document#symbolId(String)}):
+ * two mentions of the same document have equal ids exactly when they have equal strings,
+ * so a pair is compared with == rather than String.equals().
+ *
+ * The name of the mention (and so the gender of a mention which is not a pronoun)
+ * is looked up lazily, as it requires loading the list of names from disk.
+ */
+public final class MentionProfile {
+  private static final Object NOT_LOOKED_UP = new Object();
+
+  /** The gloss of the mention; the words of the mention separated by spaces */
+  public final String gloss;
+  /** The gloss of the mention, lowercased */
+  public final String lowerGloss;
+  /** The gloss of the mention split on spaces */
+  public final List<String> glossWords;
+  /** The lowercased gloss of the mention split on spaces */
+  public final List<String> lowerGlossWords;
+
+  /** The head word of the mention */
+  public final String headWord;
+  /** The head word of the mention, lowercased */
+  public final String lowerHeadWord;
+  /** The lemma of the head word */
+  public final String headLemma;
+  /** The named entity tag of the head word */
+  public final String headNer;
+  /** The part of speech tag of the head word */
+  public final String headPos;
+
+  /** The id of the gloss */
+  public final int glossId;
+  /** The id of the head word */
+  public final int headWordId;
+  /** The id of the lowercased head word */
+  public final int lowerHeadWordId;
+  /** The id of the lemma of the head word */
+  public final int headLemmaId;
+  /** The id of the named entity tag of the head word */
+  public final int headNerId;
+  /** The id of the part of speech tag of the head word */
+  public final int headPosId;
+  /** The id of each word of glossWords */
+  private final int[] wordIds;
+
+  /** True if the gloss of the mention is some pronoun */
+  public final boolean isPronoun;
+  /** True if the head word of the mention is some pronoun */
+  public final boolean headIsPronoun;
+  /** The pronoun the whole mention is, or null if it is not one we know about */
+  public final Pronoun pronoun;
+  /** The pronoun the head word is, or null if it is not one we know about */
+  public final Pronoun headPronoun;
+  /** The person of the mention, or null if it is not a known pronoun */
+  public final Pronoun.Speaker person;
+
+  /** True if the number (singular or plural) of the mention is known */
+  public final boolean hasNumber;
+  /** True if the mention is known to be plural */
+  public final boolean plural;
+
+  /** The capitalized initials of the words of the mention */
+  public final String acronym;
+
+  /** The Name of the mention, null if it is not a name, or NOT_LOOKED_UP */
+  private volatile Object name = NOT_LOOKED_UP;
+
+  /**
+   * Compute the profile of a mention.
+   * @param mention The mention to profile
+   */
+  MentionProfile(Mention mention){
+    //--Words
+    List<String> words = mention.text();
+    StringBuilder b = new StringBuilder();
+    for(int i=0; i<words.size()-1; i++){
+      b.append(words.get(i)).append(" ");
+    }
+    if(words.size() > 0){ b.append(words.get(words.size()-1)); }
+    this.gloss = b.toString();
+    this.lowerGloss = gloss.toLowerCase();
+    this.glossWords = Collections.unmodifiableList(Arrays.asList(gloss.split(" ")));
+    this.lowerGlossWords = Collections.unmodifiableList(Arrays.asList(lowerGloss.split(" ")));
+    //--Head Word
+    Sentence.Token head = mention.headToken();
+    this.headWord = head.word();
+    this.lowerHeadWord = headWord.toLowerCase();
+    this.headLemma = head.lemma();
+    this.headNer = head.nerTag();
+    this.headPos = head.posTag();
+    //--Ids
+    Document doc = mention.doc;
+    this.glossId = doc.symbolId(gloss);
+    this.headWordId = doc.symbolId(headWord);
+    this.lowerHeadWordId = doc.symbolId(lowerHeadWord);
+    this.headLemmaId = doc.symbolId(headLemma);
+    this.headNerId = doc.symbolId(headNer);
+    this.headPosId = doc.symbolId(headPos);
+    this.wordIds = new int[glossWords.size()];
+    for(int i=0; i<wordIds.length; i++){ wordIds[i] = doc.symbolId(glossWords.get(i)); }
+    //--Pronouns
+    this.isPronoun = Pronoun.isSomePronoun(gloss);
+    this.headIsPronoun = Pronoun.isSomePronoun(headWord);
+    this.pronoun = Pronoun.valueOrNull(gloss.toUpperCase().replaceAll(" ", "_"));
+    this.headPronoun = Pronoun.getPronoun(headWord);
+    this.person = pronoun == null ? null : pronoun.speaker;
+    //--Number
+    this.hasNumber = pronoun != null || head.isNoun();
+    this.plural = pronoun == null ? head.isPluralNoun() : pronoun.plural;
+    //--Acronym
+    this.acronym = acronym(glossWords);
+  }
+
+  /**
+   * The id of a word of the mention
+   * @param i The index of the word in glossWords
+   * @return The id of the word
+   */
+  public int wordId(int i){ return wordIds[i]; }
+
+  /**
+   * Whether the mention has a word with the given id (e.g., a word of another
+   * mention of the same document)
+   * @param wordId The id of the word
+   * @return True if some word of glossWords has this id
+   */
+  public boolean hasWord(int wordId){
+    for(int id : wordIds){
+      if(id == wordId){ return true; }
+    }
+    return false;
+  }
+
+  /**
+   * The name this mention is, looked up the first time it is asked for.
+   * @return The Name of the mention, or null if it is not a name
+   */
+  public Name name(){
+    Object name = this.name;
+    if(name == NOT_LOOKED_UP){
+      name = Name.get(lowerGloss);
+      this.name = name;
+    }
+    return (Name) name;
+  }
+
+  /**
+   * The gender of this mention: the gender of its pronoun if it is one, or else
+   * of its name.
+   * @return The gender of the mention, or null if it is neither a pronoun nor a name
+   */
+  public Gender gender(){
+    if(pronoun != null){ return pronoun.gender; }
+    Name name = name();
+    return name == null ? null : name.gender;
+  }
+
+  private static String acronym(List<String> words){
+    StringBuilder b = new StringBuilder();
+    for(String word : words){
+      if(word.length() == 0){ continue; }
+      char firstChar = word.charAt(0);
+      if(Character.isLetter(firstChar) && Character.isUpperCase(firstChar)){ b.append(firstChar); }
+    }
+    return b.toString();
+  }
+}
@@ -1,8 +1,10 @@
 package cs224n.coref;
 
 import cs224n.ling.Tree;
+import cs224n.ling.TreeIndex;
 import cs224n.util.Decodable;
 import cs224n.util.Pair;
+import cs224n.util.WeakInterner;
 
 import java.io.Serializable;
 import java.util.*;
@@ -16,12 +18,21 @@ import java.util.*;
 public class Sentence implements Serializable, Decodable {
   private static final long serialVersionUID = 1L;
 
+  //(token categories, as bits of the categories array)
+  private static final int NOUN = 0x1;
+  private static final int PROPER_NOUN = 0x2;
+  private static final int PLURAL_NOUN = 0x4;
+  private static final int PRONOUN_TAG = 0x8;
+  private static final int QUOTED = 0x10;
+
   /**
    * A token of the sentence, encapsulating useful information
    * about a particular index in the sentence.
+   * A token is only a view of the sentence's columns at an index; it stores
+   * nothing else, and is created when it is asked for.
    */
   public class Token implements Serializable{
-    private int index;
+    private final int index;
     private Token(int index){
       this.index = index;
     }
@@ -62,7 +73,7 @@ public class Sentence implements Serializable, Decodable {
      * @return True if this token is inside quotes
      */
     public boolean isQuoted(){
-      return !speaker().equals("") && !speaker().equals("PER0");
+      return (categories[index] & QUOTED) != 0;
     }
 
     /**
@@ -70,7 +81,7 @@ public class Sentence implements Serializable, Decodable {
      * @return true if the token is a noun, and it is a plural noun
      */
     public boolean isPluralNoun(){
-      return isNoun() && (posTag().equals("NNS") || posTag().equals("NNPS"));
+      return (categories[index] & PLURAL_NOUN) != 0;
     }
 
     /**
@@ -78,7 +89,7 @@ public class Sentence implements Serializable, Decodable {
      * @return true if the token is a noun, and it is a proper noun
      */
     public boolean isProperNoun(){
-      return isNoun() && (posTag().equals("NNP") || posTag().equals("NNPS"));
+      return (categories[index] & PROPER_NOUN) != 0;
     }
 
     /**
@@ -86,9 +97,29 @@ public class Sentence implements Serializable, Decodable {
      * @return true if the token is a noun
      */
     public boolean isNoun(){
-      String tag = posTag();
-      return tag.equals("NN") || tag.equals("NNS") || tag.equals("NNP") || tag.equals("NNPS");
+      return (categories[index] & NOUN) != 0;
+    }
+
+    /**
+     * Returns whether this token is tagged as a pronoun (PRP or PRP$).
+     * Note that this is a property of the tag; see {@link Pronoun} for pronouns by word.
+     * @return true if the token has a pronoun POS tag
+     */
+    public boolean hasPronounTag(){
+      return (categories[index] & PRONOUN_TAG) != 0;
+    }
+  }
+
+  /**
+   * The tokens of a sentence, as a list; tokens are created on access.
+   */
+  private class TokenList extends AbstractList<Token> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+    public Token get(int index){
+      if(index < 0 || index >= categories.length){ throw new IndexOutOfBoundsException("" + index); }
+      return new Token(index);
     }
+    public int size(){ return categories.length; }
   }
 
   /**
@@ -121,6 +152,25 @@ public class Sentence implements Serializable, Decodable {
    */
   public final List<Token> tokens;
 
+  /**
+   * The categories of each token (noun, proper noun, plural noun, pronoun tag, quoted),
+   * as bitmasks computed once from the POS tags and speakers
+   */
+  private final int[] categories;
+
+  /**
+   * The position of the sentence in its document, and the position of its first
+   * token among all the tokens of the document; -1 until the sentence is
+   * added to a document.
+   */
+  private int index = -1;
+  private int tokenOffset = -1;
+
+  /**
+   * The index of the parse tree, built the first time it is asked for
+   */
+  private transient TreeIndex<String> parseIndex = null;
+
   public Sentence(List<String> words,
                   List<String> lemmas,
                   List<String> posTags,
@@ -140,11 +190,37 @@ public class Sentence implements Serializable, Decodable {
     this.nerTags = namedEntities;
     this.speakersOfWord = speakers;
     this.parse = parse;
-    //--Create Tokens
-    this.tokens = new ArrayList<Token>();
-    for(int i=0; i<words.size(); i++){
-      tokens.add(new Token(i));
+    //--Categorize Tokens
+    this.categories = new int[length];
+    for(int i=0; i<length; i++){
+      categories[i] = categorize(posTags.get(i), speakers.get(i));
+    }
+    this.tokens = new TokenList();
+  }
+
+  /**
+   * Compute the categories of a token
+   * @param tag The POS tag of the token
+   * @param speaker The speaker of the token
+   * @return A bitmask of the token's categories
+   */
+  private static int categorize(String tag, String speaker){
+    int category = 0;
+    if(tag.equals("NN")){
+      category |= NOUN;
+    } else if(tag.equals("NNS")){
+      category |= NOUN | PLURAL_NOUN;
+    } else if(tag.equals("NNP")){
+      category |= NOUN | PROPER_NOUN;
+    } else if(tag.equals("NNPS")){
+      category |= NOUN | PROPER_NOUN | PLURAL_NOUN;
+    } else if(tag.equals("PRP") || tag.equals("PRP$")){
+      category |= PRONOUN_TAG;
+    }
+    if(!speaker.equals("") && !speaker.equals("PER0")){
+      category |= QUOTED;
     }
+    return category;
   }
 
   /**
@@ -152,6 +228,43 @@ public class Sentence implements Serializable, Decodable {
    * @return The length of the sentence
    */
   public int length(){ return words.size(); }
+
+  /**
+   * The index of this sentence in its document
+   * @return The index of the sentence, or -1 if it is not part of a document
+   */
+  public int index(){ return index; }
+
+  /**
+   * The index of the first token of this sentence, counting every token of the document
+   * @return The token offset of the sentence, or -1 if it is not part of a document
+   */
+  public int tokenOffset(){ return tokenOffset; }
+
+  /**
+   * An index over the parse of this sentence, for structural queries (paths to words,
+   * common ancestors, subtrees by unique index) which do not walk the tree.
+   * The index is built on first use; the parse should not be changed afterwards.
+   * @return The index of the parse tree
+   */
+  public TreeIndex<String> parseIndex(){
+    TreeIndex<String> parseIndex = this.parseIndex;
+    if(parseIndex == null){
+      parseIndex = new TreeIndex<String>(parse);
+      this.parseIndex = parseIndex;
+    }
+    return parseIndex;
+  }
+
+  /**
+   * Place this sentence in its document; called when the document is created.
+   * @param index The index of the sentence in the document
+   * @param tokenOffset The number of tokens in the document before this sentence
+   */
+  void setPosition(int index, int tokenOffset){
+    this.index = index;
+    this.tokenOffset = tokenOffset;
+  }
   public String gloss(){
     StringBuilder b = new StringBuilder();
     for(int i=0; i<words.size()-1; i++){
@@ -219,6 +332,25 @@ public class Sentence implements Serializable, Decodable {
   //--------------
   private static final String DIV = "" + (char) 0x04;
 
+  /**
+   * The words and annotations of decoded sentences, so that repeated
+   * strings (e.g. "NN", "O", "PER0") share a single instance.
+   * Strings are held weakly, so the vocabulary of documents no longer in use
+   * (e.g., evicted from a cache, or of a finished fold) can be collected.
+   */
+  private static final WeakInterner<String> symbols = new WeakInterner<String>();
+
+  /**
+   * Returns the canonical instance of a word or annotation; this is
+   * applied to every token when decoding a sentence.
+   * This method is thread-safe.
+   * @param symbol The word or annotation
+   * @return A string equal to the argument, shared between all sentences in memory
+   */
+  public static String intern(String symbol){
+    return symbols.intern(symbol);
+  }
+
   public String encode() {
     //--Variables
     StringBuilder b = new StringBuilder();
@@ -258,11 +390,11 @@ public class Sentence implements Serializable, Decodable {
     List<String> speakersOfWord = new ArrayList<String>(terms.length/5);
     //(words)
     for(int i=0; i<terms.length/5; i++){
-      words.add(terms[5*i+0].trim());
-      lemmas.add(terms[5*i+1].trim());
-      posTags.add(terms[5*i+2].trim());
-      nerTags.add(terms[5 * i + 3].trim());
-      speakersOfWord.add(terms[5 * i + 4].trim());
+      words.add(intern(terms[5*i+0].trim()));
+      lemmas.add(intern(terms[5*i+1].trim()));
+      posTags.add(intern(terms[5*i+2].trim()));
+      nerTags.add(intern(terms[5 * i + 3].trim()));
+      speakersOfWord.add(intern(terms[5 * i + 4].trim()));
 
     }
     //(parse)
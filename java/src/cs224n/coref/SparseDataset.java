@@ -0,0 +1,128 @@
+package cs224n.coref;
+
+import java.util.Arrays;
+
+/**
+ * A set of labeled examples for binary classification, as a sparse design matrix:
+ * each row is the (feature id, value) entries of one example, as in a
+ * {@link FeatureVector}, and its label.
+ * Rows are stored back to back in flat arrays (compressed sparse rows), so a
+ * dataset of millions of mention pairs is a handful of arrays rather than an
+ * object per pair.
+ *
+ * Rows are added by one thread; once built, a dataset may be read from many threads.
+ */
+public class SparseDataset {
+  /** The entries of row r are rowStart[r] through rowStart[r+1]-1 */
+  private int[] rowStart = new int[17];
+  private int[] ids = new int[64];
+  private double[] values = new double[64];
+  private boolean[] labels = new boolean[16];
+  private int size = 0;
+  private int numFeatures = 0;
+
+  /**
+   * Create an empty dataset.
+   */
+  public SparseDataset(){ }
+
+  /**
+   * Add an example
+   * @param features The features of the example; the vector is copied, and may be reused
+   * @param label The label of the example
+   */
+  public void add(FeatureVector features, boolean label){
+    //(make room)
+    if(size == labels.length){
+      labels = Arrays.copyOf(labels, 2 * size);
+      rowStart = Arrays.copyOf(rowStart, 2 * size + 1);
+    }
+    int start = rowStart[size];
+    int end = start + features.size();
+    if(end > ids.length){
+      int capacity = Math.max(end, 2 * ids.length);
+      ids = Arrays.copyOf(ids, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    //(add the row)
+    for(int i=0; i<features.size(); i++){
+      int id = features.id(i);
+      if(id < 0){ throw new IllegalArgumentException("Negative feature id: " + id); }
+      ids[start + i] = id;
+      values[start + i] = features.value(i);
+      if(id >= numFeatures){ numFeatures = id + 1; }
+    }
+    labels[size] = label;
+    size += 1;
+    rowStart[size] = end;
+  }
+
+  /**
+   * The number of examples
+   * @return The number of rows
+   */
+  public int size(){ return size; }
+
+  /**
+   * The number of features: one more than the largest feature id of any example
+   * @return The number of columns
+   */
+  public int numFeatures(){ return numFeatures; }
+
+  /**
+   * @param row An example
+   * @return The label of the example
+   */
+  public boolean label(int row){ return labels[row]; }
+
+  /**
+   * @param row An example
+   * @return The position of the first entry of the example, for {@link SparseDataset#id(int)}
+   * and {@link SparseDataset#value(int)}
+   */
+  public int rowStart(int row){ return rowStart[row]; }
+
+  /**
+   * @param row An example
+   * @return The position after the last entry of the example
+   */
+  public int rowEnd(int row){ return rowStart[row + 1]; }
+
+  /**
+   * @param entry The position of an entry
+   * @return The feature id of the entry
+   */
+  public int id(int entry){ return ids[entry]; }
+
+  /**
+   * @param entry The position of an entry
+   * @return The value of the entry
+   */
+  public double value(int entry){ return values[entry]; }
+
+  /**
+   * The dot product of an example with a dense vector of weights.
+   * Features with an id beyond the weights have weight 0.
+   * @param row The example
+   * @param weights The weights, indexed by feature id
+   * @return The sum of each value times the weight of its feature
+   */
+  public double dot(int row, double[] weights){
+    double sum = 0.0;
+    for(int i=rowStart[row]; i<rowStart[row+1]; i++){
+      int id = ids[i];
+      if(id < weights.length){ sum += values[i] * weights[id]; }
+    }
+    return sum;
+  }
+
+  /**
+   * The number of positive examples
+   * @return The number of examples labeled true
+   */
+  public int numPositive(){
+    int count = 0;
+    for(int r=0; r<size; r++){ if(labels[r]){ count += 1; } }
+    return count;
+  }
+}
@@ -8,18 +8,12 @@ import cs224n.util.Pair;
 public class Util {
 
   public static Pair<Boolean,Boolean> haveGenderAndAreSameGender(Mention a, Mention b){
-    //(names)
-    Name nameA = Name.get(a.gloss());
-    Name nameB = Name.get(b.gloss());
-    //(pronouns)
-    Pronoun proA = Pronoun.valueOrNull(a.gloss().toUpperCase().replaceAll(" ", "_"));
-    Pronoun proB = Pronoun.valueOrNull(b.gloss().toUpperCase().replaceAll(" ", "_"));
+    //(pronouns, or else names)
+    Gender genderA = a.profile().gender();
+    Gender genderB = b.profile().gender();
     //(error conditions)
-    if(nameA == null && proA == null){ return Pair.make(false, false); }
-    if(nameB == null && proB == null){ return Pair.make(false, false); }
+    if(genderA == null || genderB == null){ return Pair.make(false, false); }
     //(compare genders)
-    Gender genderA = proA == null ? nameA.gender : proA.gender;
-    Gender genderB = proB == null ? nameB.gender : proB.gender;
     return Pair.make( true, genderA.isCompatible(genderB) );
   }
 
@@ -32,19 +26,14 @@ public class Util {
   }
 
   public static Pair<Boolean,Boolean> haveNumberAndAreSameNumber(Mention a, Mention b){
-    //(names)
-    boolean nounA = a.headToken().isNoun();
-    boolean nounB = b.headToken().isNoun();
-    //(pronouns)
-    Pronoun proA = Pronoun.valueOrNull(a.gloss().toUpperCase().replaceAll(" ","_"));
-    Pronoun proB = Pronoun.valueOrNull(b.gloss().toUpperCase().replaceAll(" ","_"));
+    //(pronouns, or else nouns)
+    MentionProfile profileA = a.profile();
+    MentionProfile profileB = b.profile();
     //(error conditions)
-    if(!nounA && proA == null){ return Pair.make(false, false); }
-    if(!nounB && proB == null){ return Pair.make(false, false); }
-    //(compare genders)
-    boolean pluralA = proA == null ? a.headToken().isPluralNoun() : proA.plural;
-    boolean pluralB = proB == null ? b.headToken().isPluralNoun() : proB.plural;
-    return Pair.make( true, pluralA == pluralB );
+    if(!profileA.hasNumber){ return Pair.make(false, false); }
+    if(!profileB.hasNumber){ return Pair.make(false, false); }
+    //(compare numbers)
+    return Pair.make( true, profileA.plural == profileB.plural );
   }
 
   public static Pair<Boolean,Boolean> haveNumberAndAreSameNumber(Mention a, Entity entity){
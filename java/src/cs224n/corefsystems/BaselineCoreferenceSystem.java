@@ -4,6 +4,7 @@ import cs224n.coref.ClusteredMention;
 import cs224n.coref.Document;
 import cs224n.coref.Entity;
 import cs224n.coref.Mention;
+import cs224n.coref.MentionPairs;
 import cs224n.util.Pair;
 
 import java.util.ArrayList;
@@ -36,10 +37,9 @@ public class BaselineCoreferenceSystem implements CoreferenceSystem{
 //        System.out.println(m);
       }
       //--Iterate Over Coreferent Mention Pairs
-      for(Entity e : clusters){
-        for(Pair<Mention, Mention> mentionPair : e.orderedMentionPairs()){
-//          System.out.println(""+mentionPair.getFirst() + " and " + mentionPair.getSecond() + " are coreferent");
-        }
+      MentionPairs pairs = MentionPairs.withinEntities(doc, clusters);
+      while(pairs.next()){
+//        System.out.println(""+pairs.firstMention() + " and " + pairs.secondMention() + " are coreferent");
       }
     }
   }
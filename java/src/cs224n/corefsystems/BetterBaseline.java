@@ -39,79 +39,43 @@ public class BetterBaseline implements CoreferenceSystem {
 
   @Override
   public List<ClusteredMention> runCoreference(Document doc) {
-    List<ClusteredMention> output;
+    MentionPartition clusters = new MentionPartition(doc);
     
-    output = allSingleton(doc);
-    exactMatch(output); output = updateCMList(output);
-    headMatch(output); output = updateCMList(output);
+    exactMatch(clusters);
+    headMatch(clusters);
     
-    return output;
-  }
-  
-  public static List<ClusteredMention> updateCMList(List<ClusteredMention> clusters) {
-    List<ClusteredMention> output = new ArrayList<ClusteredMention>();
-    for (ClusteredMention cm : clusters) {
-      output.add(cm.mention.getClusteredMention());
-    }
-    return output;
-  }
-  
-  /**
-   * Convert all mentions into singleton ClusteredMentions
-   * @param doc - Document set with all Mentions
-   * @return list of all ClusteredMentions
-   */
-  public List<ClusteredMention> allSingleton(Document doc) {
-    List<ClusteredMention> output = new ArrayList<ClusteredMention>();
-    for (Mention m : doc.getMentions()) {
-      ClusteredMention newCluster = m.markSingleton();
-      output.add(newCluster);
-    }
-    return output;
+    return clusters.toClusteredMentions();
   }
   
   /**
    * Merge clusters of any mentions with exact matches (excluding pronouns)
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public void exactMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public void exactMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        if (cm1.mention.gloss().equals(cm2.mention.gloss())) {
-          mergeClusters(cm1.entity, cm2.entity);
+        if (m1.profile().glossId == m2.profile().glossId) {
+          clusters.union(i, j);
         }
       }
     }
   }
   
-  /**
-   * Merge all mentions from e1 to e2
-   */
-  public static void mergeClusters(Entity e1, Entity e2) {
-    List<Mention> m1List = new ArrayList<Mention>();
-    for (Mention m1 : e1.mentions) {
-      m1List.add(m1);
-    }
-    for (Mention m1 : m1List) {
-      m1.changeCoreference(e2);
-    }
-  }
-  
   /**
    * Merge clusters if the head word matches exactly
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public void headMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public void headMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        if (cm1.mention.headWord().equals(cm2.mention.headWord())) {
-          mergeClusters(cm1.entity, cm2.entity);
+        if (m1.profile().headWordId == m2.profile().headWordId) {
+          clusters.union(i, j);
         }
       }
     }
@@ -0,0 +1,20 @@
+package cs224n.corefsystems;
+
+/**
+ * A coreference system which searches the mentions before each mention for its
+ * antecedent, and can limit that search to nearby mentions, so that its cost per
+ * document grows linearly rather than quadratically with the number of mentions.
+ * The tester calls setCandidateLimits() with its <code>maxMentionDistance</code>,
+ * <code>maxSentenceDistance</code> and <code>maxCandidates</code> properties
+ * before training.
+ */
+public interface CandidateLimits {
+
+  /**
+   * Limit the candidate antecedents of a mention; a limit of 0 (the default) is no limit.
+   * @param maxMentionDistance The most mentions back a candidate may be
+   * @param maxSentenceDistance The most sentences back a candidate may be
+   * @param maxCandidates The most clusters, among the candidates within the other limits, to consider for a mention
+   */
+  public void setCandidateLimits(int maxMentionDistance, int maxSentenceDistance, int maxCandidates);
+}
@@ -4,24 +4,23 @@ import cs224n.coref.*;
 //import cs224n.corefsystems.RuleBased.ALL_ARTICLES;
 import cs224n.corefsystems.HobbsAlgorithm;
 import cs224n.util.Pair;
-import edu.stanford.nlp.classify.LinearClassifier;
-import edu.stanford.nlp.classify.LinearClassifierFactory;
-import edu.stanford.nlp.classify.RVFDataset;
-import edu.stanford.nlp.ling.RVFDatum;
-import edu.stanford.nlp.stats.Counter;
-import edu.stanford.nlp.util.Triple;
 import edu.stanford.nlp.util.logging.RedwoodConfiguration;
 import edu.stanford.nlp.util.logging.StanfordRedwoodConfiguration;
 
+import java.io.*;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static edu.stanford.nlp.util.logging.Redwood.Util.*;
 
 /**
  * @author Gabor Angeli (angeli at cs.stanford)
  */
-public class ClassifierBased implements CoreferenceSystem {
+public class ClassifierBased implements CoreferenceSystem, MultithreadedTraining, ConfigurableTraining, FeatureCaching, CandidateLimits, PersistentModel {
   public static final String[] ALL_ARTICLES = new String[] {"a","an","the"};
           public static final Set<String> articles = new HashSet<String>(Arrays.asList(ALL_ARTICLES));
 
@@ -79,137 +78,349 @@ public class ClassifierBased implements CoreferenceSystem {
 	});
 
 
-	private LinearClassifier<Boolean,Feature> classifier;
+	/** The classifier, over the ids of features in the feature index */
+	private LogisticRegression classifier;
+	/** The classifier's weight per feature id, and bias: a pair is coreferent if the bias
+	 * plus the weights of its features is positive */
+	private double[] weights;
+	private double bias;
+
+	/** The active features (classes, or pairs of classes), in a fixed order */
+	private final Object[] templates;
+	/** The active features, compiled: the template of each, and of its second class for a pair */
+	private final Template[] firstTemplates;
+	private final Template[] secondTemplates;
+	/** The features seen in training, as (template, value) pairs */
+	private FeatureIndex featureIndex;
+	/** The number of threads to extract training features on */
+	private int trainingThreads = 1;
+	/** The settings of the trainer, other than its threads */
+	private LogisticRegression.Trainer trainerOptions = new LogisticRegression.Trainer();
+	/** The on-disk cache of training features, if any, and where it is kept */
+	private FeatureCache featureCache = null;
+	private File featureCacheRoot = null;
+	private String featureCacheSource = null;
+	/** The limits on the candidate antecedents of a mention (maxCandidates counts clusters); 0 for no limit */
+	private int maxMentionDistance = 0;
+	private int maxSentenceDistance = 0;
+	private int maxCandidates = 0;
 
 	public ClassifierBased(){
 		StanfordRedwoodConfiguration.setup();
 		RedwoodConfiguration.current().collapseApproximate().apply();
+		//--Order Templates
+		//(by name, so that features get the same ids from run to run)
+		this.templates = ACTIVE_FEATURES.toArray();
+		Arrays.sort(templates, new Comparator<Object>() {
+			public int compare(Object a, Object b){ return templateName(a).compareTo(templateName(b)); }
+		});
+		this.featureIndex = new FeatureIndex(templateNames());
+		//--Compile Templates
+		this.firstTemplates = new Template[templates.length];
+		this.secondTemplates = new Template[templates.length];
+		for(int t=0; t<templates.length; t++){
+			if(templates[t] instanceof Class){
+				//(case: singleton feature)
+				firstTemplates[t] = extractor.template((Class<?>) templates[t]);
+			} else {
+				//(case: pair of features)
+				Pair<?,?> pair = (Pair<?,?>) templates[t];
+				firstTemplates[t] = extractor.template((Class<?>) pair.getFirst());
+				secondTemplates[t] = extractor.template((Class<?>) pair.getSecond());
+			}
+		}
+	}
+
+	public void setTrainingThreads(int numThreads){
+		this.trainingThreads = Math.max(1, numThreads);
 	}
 
-	public FeatureExtractor<Pair<Mention,ClusteredMention>,Feature,Boolean> extractor = new FeatureExtractor<Pair<Mention, ClusteredMention>, Feature, Boolean>() {
-		private <E> Feature feature(Class<E> clazz, Pair<Mention,ClusteredMention> input, Option<Double> count){
-			
-			//--Variables
-			Mention onPrix = input.getFirst(); //the first mention (referred to as m_i in the handout)
-			Mention candidate = input.getSecond().mention; //the second mention (referred to as m_j in the handout)
-			Entity candidateCluster = input.getSecond().entity; //the cluster containing the second mention
+	public void setTrainingOptions(String optimizer, double l2, int maxIterations, double learningRate,
+	                               double heldOutFraction, int patience){
+		LogisticRegression.Optimizer parsed;
+		try {
+			parsed = LogisticRegression.Optimizer.valueOf(optimizer.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown optimizer (expected lbfgs or sgd): " + optimizer);
+		}
+		this.trainerOptions = new LogisticRegression.Trainer()
+				.optimizer(parsed)
+				.l2(l2)
+				.maxIterations(maxIterations)
+				.learningRate(learningRate)
+				.earlyStopping(heldOutFraction, patience);
+	}
 
+	public void setFeatureCache(File directory, String mentionSource){
+		this.featureCacheRoot = directory;
+		this.featureCacheSource = mentionSource;
+		openFeatureCache();
+	}
+
+	public void setCandidateLimits(int maxMentionDistance, int maxSentenceDistance, int maxCandidates){
+		this.maxMentionDistance = Math.max(0, maxMentionDistance);
+		this.maxSentenceDistance = Math.max(0, maxSentenceDistance);
+		this.maxCandidates = Math.max(0, maxCandidates);
+		openFeatureCache();
+	}
+
+	/**
+	 * (Re)open the feature cache, if there is one. The candidate limits decide which
+	 * pairs are extracted, so limited runs keep their pairs apart from unlimited ones.
+	 */
+	private void openFeatureCache(){
+		if(featureCacheRoot == null){ return; }
+		String source = featureCacheSource;
+		if(maxMentionDistance > 0 || maxSentenceDistance > 0 || maxCandidates > 0){
+			source += "-m" + maxMentionDistance + "s" + maxSentenceDistance + "c" + maxCandidates;
+		}
+		this.featureCache = new FeatureCache(featureCacheRoot, source, templateNames());
+	}
+
+	/** The header of a saved model */
+	private static final int MODEL_MAGIC = 0x4342436d; // "CBCm"
+	private static final int MODEL_VERSION = 1;
+
+	/**
+	 * Write the trained model: a header, the feature index (with the names of the
+	 * active features) and the weights and bias of the classifier.
+	 */
+	public void saveModel(File file) throws IOException {
+		if(classifier == null){ throw new IllegalStateException("No model to save; train first"); }
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MODEL_MAGIC);
+			out.writeInt(MODEL_VERSION);
+			featureIndex.write(out);
+			classifier.write(out);
+		} finally {
+			out.close();
+		}
+	}
 
+	/**
+	 * Read a model written by saveModel(). The model must have been trained with the
+	 * same active features.
+	 */
+	public void loadModel(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			//--Header
+			if(in.readInt() != MODEL_MAGIC){ throw new IOException("Not a ClassifierBased model: " + file); }
+			int version = in.readInt();
+			if(version != MODEL_VERSION){ throw new IOException("Unknown model version " + version + " (expected " + MODEL_VERSION + "): " + file); }
 			//--Features
-			if(clazz.equals(Feature.ExactMatch.class)){
-				//(exact string match)
-				return new Feature.ExactMatch(onPrix.gloss().equals(candidate.gloss()));
-			}
-			else if(clazz.equals(Feature.HW_Exact.class)) {
-			  // Head-word exact matching
-	       return new Feature.HW_Exact(
-	           onPrix.headWord().equals(candidate.headWord()));
-			}
-			else if(clazz.equals(Feature.HW_PoS.class)) {
-			  // Head-word part of speech agreement
-	      return new Feature.HW_PoS(
-            onPrix.headToken().posTag().equals(candidate.headToken().posTag()));
-			}
-			else if(clazz.equals(Feature.HW_NER.class)) {
-			  // Head-word NER agreement
-	      return new Feature.HW_NER(
-            onPrix.headToken().nerTag().equals(candidate.headToken().nerTag()));
-			}
-			else if(clazz.equals(Feature.HW_Lemma.class)) {
-			  // Head-word lemma agreement
-			  return new Feature.HW_Lemma(
-            onPrix.headToken().lemma().equals(candidate.headToken().lemma()));
-			}
-			else if(clazz.equals(Feature.HW_Noun.class)) {
-			  // Head-word isNoun agreement
-			  return new Feature.HW_Noun(
-            onPrix.headToken().isNoun() == candidate.headToken().isNoun());
-			}
-			else if(clazz.equals(Feature.HW_ProperNoun.class)) {
-			  // Head-word isProperNoun agreement
-			  return new Feature.HW_ProperNoun(
-            onPrix.headToken().isProperNoun() == candidate.headToken().isProperNoun());
-			}
-			else if(clazz.equals(Feature.HW_PluralNoun.class)) {
-			  // Head-word isPluralNoun agreement
-			  return new Feature.HW_PluralNoun(
-            onPrix.headToken().isPluralNoun() == candidate.headToken().isPluralNoun());
-			}
-                        else if(clazz.equals(Feature.HW_WordInclusion.class)) {
-				
-                                return new Feature.HW_WordInclusion(isWordInclusion(candidateCluster,onPrix));
-			}
-                       else if(clazz.equals(Feature.HW_CompatibleModifiers.class)) {
-				
-                                return new Feature.HW_CompatibleModifiers(isCompatibleModifiers( candidate,onPrix));
-			}
-                       else if(clazz.equals(Feature.HW_Unigram.class)) {
-				
-                                return new Feature.HW_Unigram(countOverlap( candidate.gloss(),onPrix.gloss())== 1);  
-                       }
-                      else if(clazz.equals(Feature.HW_Bigram.class)) {
-				
-                                return new Feature.HW_Bigram(countOverlap( candidate.gloss(),onPrix.gloss())== 2);
-			}
-                      else if(clazz.equals(Feature.HW_OverlapCount.class)) {
-				
-                                return new Feature.HW_OverlapCount(countOverlap(candidate.gloss(),onPrix.gloss()));
-			}
-                      
-                      else if(clazz.equals(Feature.HW_OnePronoun.class)) {
-				
-                                return new Feature.HW_OnePronoun(Pronoun.isSomePronoun(candidate.gloss())||Pronoun.isSomePronoun(onPrix.gloss()));
-			}
-                     else if(clazz.equals(Feature.HW_BothPronoun.class)) {
-				
-                                return new Feature.HW_BothPronoun(Pronoun.isSomePronoun(candidate.gloss())&&Pronoun.isSomePronoun(onPrix.gloss()));
-			}
-                    else if(clazz.equals(Feature.HW_BothContainUppercase.class)) {
-				
-                                return new Feature.HW_BothContainUppercase(containUppercase(candidate.gloss())&&containUppercase(onPrix.gloss()));
-			} 
-                    else if(clazz.equals(Feature.HW_NumberMatch.class)) {
-				
-                                return new Feature.HW_NumberMatch(isNumberMatch(candidate ,onPrix));
-			}
-                    else if(clazz.equals(Feature.HW_StrictNumberMatch.class)) {
-				
-                                return new Feature.HW_StrictNumberMatch(isStrictNumberMatch(candidate ,onPrix));
-			}
-                    else if(clazz.equals(Feature.HW_GenderMatch.class)) {
-				
-                                return new Feature.HW_GenderMatch(isGenderMatch(candidate ,onPrix));
-			}
-                    else if(clazz.equals(Feature.HW_StrictGenderMatch.class)) {
-				
-                                return new Feature.HW_StrictGenderMatch(isStrictGenderMatch(candidate ,onPrix));
-			}
-                    else if(clazz.equals(Feature.HW_PersonMatch.class)) {
-				
-                                return new Feature.HW_PersonMatch(isPersonMatch(candidate ,onPrix));
-			}
-                    else if(clazz.equals(Feature.HW_StrictPersonMatch.class)) {
-				
-                                return new Feature.HW_StrictPersonMatch(isStrictPersonMatch(candidate ,onPrix));
-			}
-                    else if(clazz.equals(Feature.HW_SentenceDist.class)) {
-				
-                                return new Feature.HW_SentenceDist(onPrix.doc.indexOfSentence(onPrix.sentence) - candidate.doc.indexOfSentence(candidate.sentence));
-			}
-                    else if(clazz.equals(Feature.HW_MentionDist.class)) {
-				
-                                return new Feature.HW_MentionDist(onPrix.doc.indexOfMention(onPrix) - candidate.doc.indexOfMention(candidate));
-			}
-			else {
-				throw new IllegalArgumentException("Unregistered feature: " + clazz);
+			FeatureIndex loadedIndex = FeatureIndex.read(in);
+			if(loadedIndex.numTemplates() != templates.length){ throw new IOException("Model was trained with " + loadedIndex.numTemplates() + " features, not " + templates.length); }
+			String[] names = templateNames();
+			for(int t=0; t<names.length; t++){
+				if(!loadedIndex.templateName(t).equals(names[t])){
+					throw new IOException("Model was trained with different features: " + loadedIndex.templateName(t) + " instead of " + names[t]);
+				}
 			}
+			//--Classifier
+			LogisticRegression loadedClassifier = LogisticRegression.read(in);
+			if(loadedClassifier.numFeatures() != loadedIndex.size()){ throw new IOException("Model has " + loadedClassifier.numFeatures() + " weights for " + loadedIndex.size() + " features"); }
+			if(in.read() >= 0){ throw new IOException("Extra bytes in model: " + file); }
+			//--Set
+			this.featureIndex = loadedIndex;
+			this.classifier = loadedClassifier;
+			this.weights = loadedClassifier.weights();
+			this.bias = loadedClassifier.bias();
+		} finally {
+			in.close();
+		}
+	}
+
+	/** The names of the active features, in order */
+	private String[] templateNames(){
+		String[] names = new String[templates.length];
+		for(int t=0; t<templates.length; t++){ names[t] = templateName(templates[t]); }
+		return names;
+	}
+
+	private static String templateName(Object template){
+		if(template instanceof Class){
+			return ((Class<?>) template).getSimpleName();
+		} else if(template instanceof Pair){
+			Pair<?,?> pair = (Pair<?,?>) template;
+			return templateName(pair.getFirst()) + "&" + templateName(pair.getSecond());
+		} else {
+			throw new IllegalArgumentException("Unknown feature template: " + template);
+		}
+	}
+
+	private static int indicator(boolean value){ return value ? 1 : 0; }
+
+	/**
+	 * A feature template: the value of one feature class for a pair of mentions, as an
+	 * int (1 or 0 for indicators, or the count or distance itself)
+	 */
+	private static abstract class Template {
+		public abstract int value(Mention onPrix, Mention candidate, Entity candidateCluster);
+	}
+
+	private final PairFeatureExtractor extractor = new PairFeatureExtractor();
+
+	/**
+	 * Holds the template of every feature class, registered once, and writes the
+	 * features of the active templates for pairs of mentions.
+	 */
+	private class PairFeatureExtractor {
+		/** The template of each feature class */
+		private final Map<Class<?>,Template> registry = new HashMap<Class<?>,Template>();
+
+		private PairFeatureExtractor(){
+			register(Feature.ExactMatch.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					//(exact string match)
+					return indicator(onPrix.profile().glossId == candidate.profile().glossId);
+				}
+			});
+			register(Feature.HW_Exact.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					//(head-word exact matching)
+					return indicator(onPrix.profile().headWordId == candidate.profile().headWordId);
+				}
+			});
+			register(Feature.HW_PoS.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					//(head-word part of speech agreement)
+					return indicator(onPrix.profile().headPosId == candidate.profile().headPosId);
+				}
+			});
+			register(Feature.HW_NER.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					//(head-word NER agreement)
+					return indicator(onPrix.profile().headNerId == candidate.profile().headNerId);
+				}
+			});
+			register(Feature.HW_Lemma.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					//(head-word lemma agreement)
+					return indicator(onPrix.profile().headLemmaId == candidate.profile().headLemmaId);
+				}
+			});
+			register(Feature.HW_Noun.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					//(head-word isNoun agreement)
+					return indicator(onPrix.headToken().isNoun() == candidate.headToken().isNoun());
+				}
+			});
+			register(Feature.HW_ProperNoun.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					//(head-word isProperNoun agreement)
+					return indicator(onPrix.headToken().isProperNoun() == candidate.headToken().isProperNoun());
+				}
+			});
+			register(Feature.HW_PluralNoun.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					//(head-word isPluralNoun agreement)
+					return indicator(onPrix.headToken().isPluralNoun() == candidate.headToken().isPluralNoun());
+				}
+			});
+			register(Feature.HW_WordInclusion.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(isWordInclusion(candidateCluster,onPrix));
+				}
+			});
+			register(Feature.HW_CompatibleModifiers.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(isCompatibleModifiers( candidate,onPrix));
+				}
+			});
+			register(Feature.HW_Unigram.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(countOverlap( candidate,onPrix)== 1);
+				}
+			});
+			register(Feature.HW_Bigram.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(countOverlap( candidate,onPrix)== 2);
+				}
+			});
+			register(Feature.HW_OverlapCount.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return countOverlap(candidate,onPrix);
+				}
+			});
+			register(Feature.HW_OnePronoun.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(candidate.profile().isPronoun||onPrix.profile().isPronoun);
+				}
+			});
+			register(Feature.HW_BothPronoun.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(candidate.profile().isPronoun&&onPrix.profile().isPronoun);
+				}
+			});
+			register(Feature.HW_BothContainUppercase.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(containUppercase(candidate.gloss())&&containUppercase(onPrix.gloss()));
+				}
+			});
+			register(Feature.HW_NumberMatch.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(isNumberMatch(candidate ,onPrix));
+				}
+			});
+			register(Feature.HW_StrictNumberMatch.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(isStrictNumberMatch(candidate ,onPrix));
+				}
+			});
+			register(Feature.HW_GenderMatch.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(isGenderMatch(candidate ,onPrix));
+				}
+			});
+			register(Feature.HW_StrictGenderMatch.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(isStrictGenderMatch(candidate ,onPrix));
+				}
+			});
+			register(Feature.HW_PersonMatch.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(isPersonMatch(candidate ,onPrix));
+				}
+			});
+			register(Feature.HW_StrictPersonMatch.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return indicator(isStrictPersonMatch(candidate ,onPrix));
+				}
+			});
+			register(Feature.HW_SentenceDist.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return onPrix.sentenceIndex() - candidate.sentenceIndex();
+				}
+			});
+			register(Feature.HW_MentionDist.class, new Template() {
+				public int value(Mention onPrix, Mention candidate, Entity candidateCluster){
+					return onPrix.doc.indexOfMention(onPrix) - candidate.doc.indexOfMention(candidate);
+				}
+			});
+		}
+
+		private void register(Class<?> clazz, Template template){
+			registry.put(clazz, template);
+		}
+
+		/**
+		 * The template of a feature class, to compile the active features once
+		 * @param clazz The feature class
+		 * @return The template which computes the value of that feature
+		 */
+		public Template template(Class<?> clazz){
+			Template template = registry.get(clazz);
+			if(template == null){ throw new IllegalArgumentException("Unregistered feature: " + clazz); }
+			return template;
 		}
                 public boolean isWordInclusion(Entity entity, Mention newMention){
                     String clusterString = new String();
                       for (Mention m : entity.mentions)
-                        clusterString += " " + m.gloss().toLowerCase();
+                        clusterString += " " + m.profile().lowerGloss;
 
-                    for (String word : newMention.gloss().toLowerCase().split(" ")){
+                    for (String word : newMention.profile().lowerGlossWords){
                       if (!isArticle(word) && !clusterString.contains(word))
                         return false;
                     }
@@ -231,11 +442,10 @@ public class ClassifierBased implements CoreferenceSystem {
                    * Returns TRUE if two mentions have Compatible Modifiers is satisfied, otherwise FALSE
                    */
                   public boolean isCompatibleModifiers(Mention mention, Mention newMention){
-                    String newText = newMention.gloss();
                     List<String> newPosTags = newMention.sentence.posTags;
                     int index = newMention.beginIndexInclusive;
                     String posTag;
-                    for (String word : newText.split(" ")){
+                    for (String word : newMention.profile().glossWords){
                       posTag = newPosTags.get(index);
                       if (posTag.equals("NN") || posTag.equals("JJ")|| posTag.equals("JJS") || posTag.equals("JJR")){
                         if (!mention.gloss().contains(word))
@@ -246,6 +456,25 @@ public class ClassifierBased implements CoreferenceSystem {
                     return false;
                   }
                   
+                  /**
+                  * Compute the number of the words the two mentions overlap with each other;
+                  * the same as countOverlap(a.gloss(), b.gloss()), from the mentions' profiles
+                  */
+                public int countOverlap (Mention a, Mention b) {
+                  MentionProfile longer = a.profile();
+                  MentionProfile shorter = b.profile();
+                  if (longer.gloss.length() <= shorter.gloss.length()){
+                    longer = b.profile();
+                    shorter = a.profile();
+                  }
+                  int nCommon = 0;
+                  for (String word : longer.lowerGlossWords){
+                    if (!articles.contains(word) && shorter.lowerGloss.contains(word))
+                      nCommon++;
+                  }
+                  return nCommon;
+                }
+
                   /**
                   * Compute the number of the words the two string overlap with each other
                   */
@@ -357,10 +586,10 @@ public class ClassifierBased implements CoreferenceSystem {
                     */
                    public boolean isPersonMatch(Mention m1, Mention m2){
                      boolean flag = true;
-                     if (Pronoun.isSomePronoun(m1.gloss()) && Pronoun.isSomePronoun(m2.gloss())) {
+                     if (m1.profile().isPronoun && m2.profile().isPronoun) {
                        if (!(m1.headToken().isQuoted() || m2.headToken().isQuoted())) {
-                         Pronoun p1 = Pronoun.valueOrNull(m1.gloss());
-                         Pronoun p2 = Pronoun.valueOrNull(m2.gloss());
+                         Pronoun p1 = m1.profile().pronoun;
+                         Pronoun p2 = m2.profile().pronoun;
                          if (p1 != null && p2 != null) {
                            flag = (p1.speaker == p2.speaker);
                          }
@@ -373,10 +602,10 @@ public class ClassifierBased implements CoreferenceSystem {
                     */
                    public boolean isStrictPersonMatch(Mention m1, Mention m2){
                      boolean flag = false;
-                     if (Pronoun.isSomePronoun(m1.gloss()) && Pronoun.isSomePronoun(m2.gloss())) {
+                     if (m1.profile().isPronoun && m2.profile().isPronoun) {
                        if (!(m1.headToken().isQuoted() || m2.headToken().isQuoted())) {
-                         Pronoun p1 = Pronoun.valueOrNull(m1.gloss());
-                         Pronoun p2 = Pronoun.valueOrNull(m2.gloss());
+                         Pronoun p1 = m1.profile().pronoun;
+                         Pronoun p2 = m2.profile().pronoun;
                          if (p1 != null && p2 != null) {
                            flag = (p1.speaker == p2.speaker);
                          }
@@ -385,102 +614,261 @@ public class ClassifierBased implements CoreferenceSystem {
                      return flag;
                    }
   
-		@SuppressWarnings({"unchecked"})
-		@Override
-		protected void fillFeatures(Pair<Mention, ClusteredMention> input, Counter<Feature> inFeatures, Boolean output, Counter<Feature> outFeatures) {
-			//--Input Features
-			for(Object o : ACTIVE_FEATURES){
-				if(o instanceof Class){
-					//(case: singleton feature)
-					Option<Double> count = new Option<Double>(1.0);
-					Feature feat = feature((Class) o, input, count);
-					if(count.get() > 0.0){
-						inFeatures.incrementCount(feat, count.get());
-					}
-				} else if(o instanceof Pair){
-					//(case: pair of features)
-					Pair<Class,Class> pair = (Pair<Class,Class>) o;
-					Option<Double> countA = new Option<Double>(1.0);
-					Option<Double> countB = new Option<Double>(1.0);
-					Feature featA = feature(pair.getFirst(), input, countA);
-					Feature featB = feature(pair.getSecond(), input, countB);
-					if(countA.get() * countB.get() > 0.0){
-						inFeatures.incrementCount(new Feature.PairFeature(featA, featB), countA.get() * countB.get());
-					}
-				}
+		/**
+		 * The value of one active feature for a pair of mentions; this touches no shared state.
+		 * @param t The template of the feature (its position among the active features)
+		 * @param onPrix The mention being resolved
+		 * @param candidate The candidate antecedent, with its cluster
+		 * @return The value of the feature; a pair of features has both values, in one long
+		 */
+		public long value(int t, Mention onPrix, ClusteredMention candidate){
+			long value = firstTemplates[t].value(onPrix, candidate.mention, candidate.entity);
+			if(secondTemplates[t] != null){
+				int valueB = secondTemplates[t].value(onPrix, candidate.mention, candidate.entity);
+				value = (value << 32) | (valueB & 0xFFFFFFFFL);
 			}
+			return value;
+		}
+	}
 
-			//--Output Features
-			if(output != null){
-				outFeatures.incrementCount(new Feature.CoreferentIndicator(output), 1.0);
+	/**
+	 * The training pairs of one document, before their features are given ids:
+	 * the value of every template for each pair, and whether the pair is coreferent
+	 */
+	private static class DocumentPairs {
+		private final String documentId;
+		private long[] values;
+		private boolean[] coreferent = new boolean[16];
+		private int size = 0;
+		private DocumentPairs(String documentId){ this.documentId = documentId; }
+	}
+
+	/**
+	 * Extract the training pairs of a document: each mention, paired with each
+	 * previous mention (nearest first) up to and including its closest antecedent,
+	 * within the same candidate limits as runCoreference().
+	 * This reads and marks only the given document, and does not log, so documents can be
+	 * extracted in parallel.
+	 * @param doc The document
+	 * @param goldClusters The gold clusters of the document
+	 * @return The template values and labels of the pairs, in order
+	 */
+	private DocumentPairs extractPairs(Document doc, List<Entity> goldClusters){
+		//--Variables
+		int numTemplates = firstTemplates.length;
+		DocumentPairs rtn = new DocumentPairs(doc.id);
+		rtn.values = new long[16 * numTemplates];
+		List<Mention> mentions = doc.getMentions();
+		Map<Mention,Entity> goldEntities = Entity.mentionToEntityMap(goldClusters);
+		Entity[] entityOf = new Entity[mentions.size()];
+		int[] sentenceOf = new int[mentions.size()];
+		for(int i=0; i<mentions.size(); i++){
+			entityOf[i] = goldEntities.get(mentions.get(i));
+			if(entityOf[i] == null){ throw new IllegalArgumentException("Mention has no gold entity: " + mentions.get(i)); }
+			sentenceOf[i] = mentions.get(i).sentenceIndex();
+		}
+		Set<Entity> clustersSeen = Collections.newSetFromMap(new IdentityHashMap<Entity,Boolean>());
+		int lo = 0;
+		//--Extract
+		//(for each mention, and each previous mention, nearest first...)
+		MentionPairs pairs = MentionPairs.antecedents(doc, 0);
+		while(pairs.next()){
+			//(stop at the candidate limits)
+			if(pairs.second() == pairs.first() - 1){ lo = firstCandidate(pairs.first(), sentenceOf, entityOf, clustersSeen); }
+			if(pairs.second() < lo){
+				pairs.skipFirst();
+				continue;
+			}
+			//(get the mentions and their clusters)
+			Mention onPrix = pairs.firstMention();
+			Entity source = entityOf[pairs.first()];
+			Mention cand = pairs.secondMention();
+			Entity target = entityOf[pairs.second()];
+			//(make room)
+			if(rtn.size == rtn.coreferent.length){
+				rtn.coreferent = Arrays.copyOf(rtn.coreferent, 2 * rtn.size);
+				rtn.values = Arrays.copyOf(rtn.values, 2 * rtn.size * numTemplates);
+			}
+			//(extract features)
+			ClusteredMention candidate = cand.markCoreferent(target);
+			for(int t=0; t<numTemplates; t++){
+				rtn.values[rtn.size * numTemplates + t] = extractor.value(t, onPrix, candidate);
 			}
+			rtn.coreferent[rtn.size] = (target == source);
+			rtn.size += 1;
+			//(stop if we've found the antecedent)
+			if(target == source){ pairs.skipFirst(); }
 		}
+		return rtn;
+	}
+
+	/**
+	 * The training pairs of a document, read from the feature cache if it has them,
+	 * and otherwise extracted (and written to the cache, if there is one).
+	 * @param doc The document
+	 * @param goldClusters The gold clusters of the document
+	 * @return The template values and labels of the pairs, in order
+	 */
+	private DocumentPairs documentPairs(Document doc, List<Entity> goldClusters){
+		//--Read Cache
+		if(featureCache == null){ return extractPairs(doc, goldClusters); }
+		Pair<long[],boolean[]> cached = featureCache.get(doc);
+		if(cached != null){
+			DocumentPairs rtn = new DocumentPairs(doc.id);
+			rtn.values = cached.getFirst();
+			rtn.coreferent = cached.getSecond();
+			rtn.size = rtn.coreferent.length;
+			return rtn;
+		}
+		//--Extract
+		DocumentPairs rtn = extractPairs(doc, goldClusters);
+		try {
+			featureCache.put(doc, rtn.values, rtn.coreferent, rtn.size);
+		} catch (IOException e) {
+			warn("Could not cache features of document " + doc.id + ": " + e.getMessage());
+		}
+		return rtn;
+	}
 
-		@Override
-		protected Feature concat(Feature a, Feature b) {
-			return new Feature.PairFeature(a,b);
+	/**
+	 * Give the features of a document's training pairs ids, and add the pairs to the dataset.
+	 * Ids are handed out in the order features are first seen here, so documents must be
+	 * added in the same order for the same ids.
+	 * @param dataset The dataset to add to
+	 * @param pairs The extracted pairs of a document
+	 * @param features A buffer to reuse
+	 */
+	private void addPairs(SparseDataset dataset, DocumentPairs pairs, FeatureVector features){
+		startTrack("Document " + pairs.documentId);
+		int numTemplates = firstTemplates.length;
+		for(int p=0; p<pairs.size; p++){
+			features.clear();
+			for(int t=0; t<numTemplates; t++){
+				features.add(featureIndex.addAndGetId(t, pairs.values[p * numTemplates + t]), 1.0);
+			}
+			dataset.add(features, pairs.coreferent[p]);
 		}
-	};
+		endTrack("Document " + pairs.documentId);
+	}
 
 	public void train(Collection<Pair<Document, List<Entity>>> trainingData) {
 		startTrack("Training");
 		//--Variables
-		RVFDataset<Boolean, Feature> dataset = new RVFDataset<Boolean, Feature>();
-		LinearClassifierFactory<Boolean, Feature> fact = new LinearClassifierFactory<Boolean,Feature>();
+		SparseDataset dataset = new SparseDataset();
+		this.featureIndex = new FeatureIndex(templateNames());  // (forget the features of an earlier model)
+		LogisticRegression.Trainer trainer = trainerOptions.threads(trainingThreads);
+		FeatureVector features = new FeatureVector();
 		//--Feature Extraction
 		startTrack("Feature Extraction");
-		for(Pair<Document,List<Entity>> datum : trainingData){
-			//(document variables)
-			Document doc = datum.getFirst();
-			List<Entity> goldClusters = datum.getSecond();
-			List<Mention> mentions = doc.getMentions();
-			Map<Mention,Entity> goldEntities = Entity.mentionToEntityMap(goldClusters);
-			startTrack("Document " + doc.id);
-			//(for each mention...)
-			for(int i=0; i<mentions.size(); i++){
-				//(get the mention and its cluster)
-				Mention onPrix = mentions.get(i);
-				Entity source = goldEntities.get(onPrix);
-				if(source == null){ throw new IllegalArgumentException("Mention has no gold entity: " + onPrix); }
-				//(for each previous mention...)
-				int oldSize = dataset.size();
-				for(int j=i-1; j>=0; j--){
-					//(get previous mention and its cluster)
-					Mention cand = mentions.get(j);
-					Entity target = goldEntities.get(cand);
-					if(target == null){ throw new IllegalArgumentException("Mention has no gold entity: " + cand); }
-					//(extract features)
-					Counter<Feature> feats = extractor.extractFeatures(Pair.make(onPrix, cand.markCoreferent(target)));
-					//(add datum)
-					dataset.add(new RVFDatum<Boolean, Feature>(feats, target == source));
-					//(stop if
-					if(target == source){ break; }
+		if(trainingThreads <= 1){
+			//(case: single threaded)
+			for(Pair<Document,List<Entity>> datum : trainingData){
+				addPairs(dataset, documentPairs(datum.getFirst(), datum.getSecond()), features);
+			}
+		} else {
+			//(case: multithreaded; documents are decoded on this thread and extracted on the pool,
+			// and their features are given ids (and logged) in document order, so the dataset is the same)
+			ForkJoinPool pool = new ForkJoinPool(trainingThreads);
+			LinkedList<Future<DocumentPairs>> pending = new LinkedList<Future<DocumentPairs>>();
+			try {
+				for(final Pair<Document,List<Entity>> datum : trainingData){
+					pending.addLast(pool.submit(new Callable<DocumentPairs>(){
+						public DocumentPairs call() {
+							return documentPairs(datum.getFirst(), datum.getSecond());
+						}
+					}));
+					//((bound the number of documents in flight))
+					if(pending.size() >= 2 * trainingThreads){ addPairs(dataset, pending.removeFirst().get(), features); }
 				}
-				//logf("Mention %s (%d datums)", onPrix.toString(), dataset.size() - oldSize);
+				while(!pending.isEmpty()){ addPairs(dataset, pending.removeFirst().get(), features); }
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+				throw new RuntimeException(e.getCause());
+			} finally {
+				pool.shutdownNow();
 			}
-			endTrack("Document " + doc.id);
 		}
 		endTrack("Feature Extraction");
 		//--Train Classifier
 		startTrack("Minimizer");
-		this.classifier = fact.trainClassifier(dataset);
+		this.classifier = trainer.train(dataset);
+		this.weights = classifier.weights();
+		this.bias = classifier.bias();
+		log("" + dataset.size() + " pairs (" + dataset.numPositive() + " coreferent), " + weights.length + " features; "
+				+ trainer.iterations() + " iterations, objective " + new DecimalFormat("0.000").format(trainer.objective()));
 		endTrack("Minimizer");
 		//--Dump Weights
 		startTrack("Features");
-		//(get labels to print)
-		Set<Boolean> labels = new HashSet<Boolean>();
-		labels.add(true);
+		//(sort features by the magnitude of their weight)
+		Integer[] byMagnitude = new Integer[weights.length];
+		for(int id=0; id<weights.length; id++){ byMagnitude[id] = id; }
+		Arrays.sort(byMagnitude, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b){ return Double.compare(Math.abs(weights[b]), Math.abs(weights[a])); }
+		});
 		//(print features)
-		for(Triple<Feature,Boolean,Double> featureInfo : this.classifier.getTopFeatures(labels, 0.0, true, 100, true)){
-			Feature feature = featureInfo.first();
-			Boolean label = featureInfo.second();
-			Double magnitude = featureInfo.third();
-			//log(FORCE,new DecimalFormat("0.000").format(magnitude) + " [" + label + "] " + feature);
+		for(int k=0; k<Math.min(100, byMagnitude.length); k++){
+			String feature = featureIndex.toString(byMagnitude[k]);
+			double magnitude = weights[byMagnitude[k]];
+			//log(FORCE,new DecimalFormat("0.000").format(magnitude) + " " + feature);
 		}
 		end_Track("Features");
 		endTrack("Training");
 	}
 
+	/**
+	 * The first candidate antecedent of a mention, within the candidate limits.
+	 * The candidates are every mention from it up to the mention itself; as mentions are
+	 * in document order, each search stops at the first mention too far back.
+	 * The mention and sentence limits are applied first; within them, the candidate limit
+	 * counts the clusters of the candidates, so that a cluster mentioned many times nearby
+	 * does not crowd out the clusters before it.
+	 * @param i The index of the mention
+	 * @param sentenceOf The index of the sentence of each mention
+	 * @param entityOf The cluster of each mention before i
+	 * @param clustersSeen Scratch space for counting clusters
+	 * @return The index of the furthest candidate to consider
+	 */
+	private int firstCandidate(int i, int[] sentenceOf, Entity[] entityOf, Set<Entity> clustersSeen){
+		int lo = 0;
+		if(maxMentionDistance > 0){ lo = Math.max(lo, i - maxMentionDistance); }
+		if(maxSentenceDistance > 0){
+			int j = i;
+			while(j > lo && sentenceOf[i] - sentenceOf[j-1] <= maxSentenceDistance){ j -= 1; }
+			lo = j;
+		}
+		if(maxCandidates > 0){
+			clustersSeen.clear();
+			int j = i;
+			while(j > lo && (clustersSeen.contains(entityOf[j-1]) || clustersSeen.size() < maxCandidates)){
+				clustersSeen.add(entityOf[j-1]);
+				j -= 1;
+			}
+			lo = j;
+		}
+		return lo;
+	}
+
+	/**
+	 * Score a mention against a range of candidate antecedents at once, one template at a
+	 * time, as the bias plus the dense weights of their features.
+	 * @param onPrix The mention being resolved
+	 * @param candidates The clustered mentions before it
+	 * @param lo The furthest candidate to score
+	 * @param hi The index after the nearest candidate to score
+	 * @param scores Filled with the scores, nearest candidate first: candidate j is at hi-1-j
+	 */
+	private void scoreCandidates(Mention onPrix, List<ClusteredMention> candidates, int lo, int hi, double[] scores){
+		Arrays.fill(scores, 0, hi - lo, bias);
+		for(int t=0; t<firstTemplates.length; t++){
+			for(int j=hi-1; j>=lo; j--){
+				int id = featureIndex.idOf(t, extractor.value(t, onPrix, candidates.get(j)));
+				if(id >= 0){ scores[hi-1-j] += weights[id]; }
+			}
+		}
+	}
+
 	public List<ClusteredMention> runCoreference(Document doc) {
 		//--Overhead
 		startTrack("Testing " + doc.id);
@@ -488,20 +876,22 @@ public class ClassifierBased implements CoreferenceSystem {
 		List<ClusteredMention> rtn = new ArrayList<ClusteredMention>(doc.getMentions().size());
 		List<Mention> mentions = doc.getMentions();
 		int singletons = 0;
+		int[] sentenceOf = new int[mentions.size()];
+		for(int i=0; i<mentions.size(); i++){ sentenceOf[i] = mentions.get(i).sentenceIndex(); }
+		Entity[] entityOf = new Entity[mentions.size()];
+		Set<Entity> clustersSeen = Collections.newSetFromMap(new IdentityHashMap<Entity,Boolean>());
+		double[] scores = new double[mentions.size()];
 		//--Run Classifier
 		for(int i=0; i<mentions.size(); i++){
 			//(variables)
 			Mention onPrix = mentions.get(i);
 			int coreferentWith = -1;
-			//(get mention it is coreferent with)
-			for(int j=i-1; j>=0; j--){
-
-				ClusteredMention cand = rtn.get(j);
-				
-				boolean coreferent = classifier.classOf(new RVFDatum<Boolean, Feature>(
-						       extractor.extractFeatures(Pair.make(onPrix, cand))));
-				
-				if(coreferent){
+			//(score the candidates)
+			int lo = firstCandidate(i, sentenceOf, entityOf, clustersSeen);
+			scoreCandidates(onPrix, rtn, lo, i, scores);
+			//(get the nearest mention it is coreferent with)
+			for(int j=i-1; j>=lo; j--){
+				if(scores[i-1-j] > 0.0){
 					coreferentWith = j;
 					break;
 				}
@@ -514,6 +904,7 @@ public class ClassifierBased implements CoreferenceSystem {
 				//log("Mention " + onPrix + " coreferent with " + mentions.get(coreferentWith));
 				rtn.add(onPrix.markCoreferent(rtn.get(coreferentWith)));
 			}
+			entityOf[i] = rtn.get(i).entity;
 		}
 		//log("" + singletons + " singletons");
 		//--Return
@@ -522,22 +913,12 @@ public class ClassifierBased implements CoreferenceSystem {
 		return rtn;
 	}
 
-	private class Option<T> {
-		private T obj;
-		public Option(T obj){ this.obj = obj; }
-		public Option(){};
-		public T get(){ return obj; }
-		public void set(T obj){ this.obj = obj; }
-		public boolean exists(){ return obj != null; }
-	}
-	
-	
   public static void pronounMatch(List<ClusteredMention> currentClusters) {
     // Separate pronouns from non-pronouns
     List<ClusteredMention> proList = new ArrayList<ClusteredMention>();
     List<ClusteredMention> nonList = new ArrayList<ClusteredMention>();
     for (ClusteredMention cm : currentClusters) {
-      if (Pronoun.isSomePronoun(cm.mention.headWord())) {
+      if (cm.mention.profile().headIsPronoun) {
         proList.add(cm);
       } else {
         nonList.add(cm);
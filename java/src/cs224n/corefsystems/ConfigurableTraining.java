@@ -0,0 +1,23 @@
+package cs224n.corefsystems;
+
+/**
+ * A coreference system which trains a model by numerical optimization, and lets
+ * the tester choose how.
+ * The tester calls setTrainingOptions() with its <code>optimizer</code>, <code>l2</code>,
+ * <code>maxIterations</code>, <code>learningRate</code>, <code>heldOut</code> and
+ * <code>patience</code> properties before training.
+ */
+public interface ConfigurableTraining {
+
+  /**
+   * Set how to train.
+   * @param optimizer The optimizer to train with: lbfgs or sgd
+   * @param l2 The strength of the L2 penalty on the weights
+   * @param maxIterations The most iterations (or epochs) to run
+   * @param learningRate The initial learning rate, for sgd
+   * @param heldOutFraction The fraction of the training examples to hold out for early stopping; 0 for none
+   * @param patience The number of iterations without improvement on the held out examples to stop after
+   */
+  public void setTrainingOptions(String optimizer, double l2, int maxIterations, double learningRate,
+                                 double heldOutFraction, int patience);
+}
@@ -38,6 +38,9 @@ public interface CoreferenceSystem {
    * You are not given other documents (nothing will be coreferent across
    * documents), nor the gold entities; your task is to assign every Mention in
    * the given document to some previously created Entity, or a singleton Entity.
+   * When the tester is run with -threads greater than one, this method is called
+   * concurrently on different documents; it should therefore only read state
+   * set up during train().
    *
    * @param doc The document to run coreference on
    * @return A list of ClusteredMentions, corresponding to each mention in the document
@@ -1,5 +1,6 @@
 package cs224n.corefsystems;
 
+import java.io.*;
 import java.util.Collection;
 import java.util.List;
 import java.util.ArrayList;
@@ -25,7 +26,7 @@ import weka.core.Instance;
 import weka.core.Instances;
 import weka.classifiers.functions.Logistic;
 
-public class EntityCentric implements CoreferenceSystem {
+public class EntityCentric implements CoreferenceSystem, FeatureCaching, PersistentModel {
   
   public CounterMap<String,String> synonyms = new CounterMap<String,String>();
    // Create word sets that we will treat differently and/or exclude from certain rules
@@ -38,6 +39,15 @@ public class EntityCentric implements CoreferenceSystem {
   public Classifier model;
   Instances dataset = null;
 
+  /** The names of the pair features, in the order of the dataset's attributes (and the feature cache) */
+  private static final String[] FEATURE_NAMES = new String[] {"distance","lemmamatch","exactmatch","exactheadmatch"};
+  private FeatureCache featureCache = null;
+
+  @Override
+  public void setFeatureCache(File directory, String mentionSource){
+    this.featureCache = new FeatureCache(directory, mentionSource, FEATURE_NAMES);
+  }
+
 
   @Override
   public void train(Collection<Pair<Document, List<Entity>>> trainingData) {
@@ -46,6 +56,47 @@ public class EntityCentric implements CoreferenceSystem {
   }
   
   
+  /** The header of a saved model */
+  private static final int MODEL_MAGIC = 0x45436d64; // "ECmd"
+  private static final int MODEL_VERSION = 1;
+
+  /**
+   * Write the trained Weka model, and the attributes of its dataset, as serialized
+   * objects after a header.
+   */
+  @Override
+  public void saveModel(File file) throws IOException {
+    if(model == null || dataset == null){ throw new IllegalStateException("No model to save; train first"); }
+    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MODEL_MAGIC);
+      out.writeInt(MODEL_VERSION);
+      out.writeObject(model);
+      out.writeObject(new Instances(dataset, 0));
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Read a model written by saveModel()
+   */
+  @Override
+  public void loadModel(File file) throws IOException {
+    ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if(in.readInt() != MODEL_MAGIC){ throw new IOException("Not an EntityCentric model: " + file); }
+      int version = in.readInt();
+      if(version != MODEL_VERSION){ throw new IOException("Unknown model version " + version + " (expected " + MODEL_VERSION + "): " + file); }
+      this.model = (Classifier) in.readObject();
+      this.dataset = (Instances) in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Could not read model: " + file, e);
+    } finally {
+      in.close();
+    }
+  }
+
   @Override
   public List<ClusteredMention> runCoreference(Document doc) {
     List<ClusteredMention> output;
@@ -101,57 +152,17 @@ public class EntityCentric implements CoreferenceSystem {
     dataset = new Instances("train_dataset", attributes, 0);
 		
     for(Pair<Document, List<Entity>> pair : trainingData){
-      Document doc = pair.getFirst();
-      List<Entity> clusters = pair.getSecond();
-         
-      //Iterate Over Coreferent Mention Pairs
-      int distance;
-      int lemmaMatch;
-      int exactMatch;
-      int exactHeadMatch;
-        
-      
-      //Add positive instances
-      for(Entity e : clusters){
-        for(Pair<Mention, Mention> mentionPair : e.orderedMentionPairs()){
-          Mention m1 = mentionPair.getFirst();
-          Mention m2 = mentionPair.getSecond();
-          distance = java.lang.Math.abs(m1.doc.indexOfMention(m1) - m2.doc.indexOfMention(m2));
-          lemmaMatch = (m1.headToken().lemma().equals(m2.headToken().lemma())) ? 0 : 1;
-          exactMatch = (m1.gloss().equals(m2.gloss())) ? 0 : 1;
-          exactHeadMatch = (m1.headWord().equals(m2.headWord())) ? 0 : 1 ;
-          //add data into table
-          Instance row = new Instance(5);
-          row.setValue((Attribute)attributes.elementAt(0), distance);      
-          row.setValue((Attribute)attributes.elementAt(1), lemmaMatch); 
-          row.setValue((Attribute)attributes.elementAt(2), exactMatch);      
-          row.setValue((Attribute)attributes.elementAt(3), exactHeadMatch); 
-          row.setValue((Attribute)attributes.elementAt(4), "yes");    
-          dataset.add(row);
-        }
-      }
-      //Add negative instance 
-      for (Entity e : clusters){ 
-        for (Mention m1 : e.mentions){
-          for (Entity e2: clusters){
-            if (!e2.equals(e)){
-              for (Mention m2: e2.mentions){
-                distance = java.lang.Math.abs(m1.doc.indexOfMention(m1) - m2.doc.indexOfMention(m2));
-                exactMatch = (m1.gloss().equals(m2.gloss())) ? 0 : 1;
-                exactHeadMatch = (m1.headWord().equals(m2.headWord())) ? 0 : 1 ;
-                lemmaMatch = (m1.headToken().lemma().equals(m2.headToken().lemma())) ? 0 : 1;
-                //add data into table
-                Instance row = new Instance(5);
-                row.setValue((Attribute)attributes.elementAt(0), distance);      
-                row.setValue((Attribute)attributes.elementAt(1), lemmaMatch); 
-                row.setValue((Attribute)attributes.elementAt(2), exactMatch);      
-                row.setValue((Attribute)attributes.elementAt(3), exactHeadMatch); 
-                row.setValue((Attribute)attributes.elementAt(4), "no");    
-                dataset.add(row);
-              }
-            }
-          }
+      Pair<long[],boolean[]> features = documentFeatures(pair.getFirst(), pair.getSecond());
+      long[] values = features.getFirst();
+      boolean[] coreferent = features.getSecond();
+      //add data into table
+      for (int p = 0; p < coreferent.length; p++) {
+        Instance row = new Instance(5);
+        for (int f = 0; f < FEATURE_NAMES.length; f++) {
+          row.setValue((Attribute)attributes.elementAt(f), values[p * FEATURE_NAMES.length + f]);
         }
+        row.setValue((Attribute)attributes.elementAt(4), coreferent[p] ? "yes" : "no");
+        dataset.add(row);
       }
     } 
     
@@ -160,6 +171,60 @@ public class EntityCentric implements CoreferenceSystem {
     return dataset;
   }
   
+  /**
+   * The pair features of a document, read from the feature cache if it has them,
+   * and otherwise extracted (and written to the cache, if there is one).
+   * @param doc The document
+   * @param clusters The gold clusters of the document
+   * @return The features of every pair (FEATURE_NAMES.length per pair), and whether
+   * the pair is coreferent; the coreferent pairs come first
+   */
+  private Pair<long[],boolean[]> documentFeatures(Document doc, List<Entity> clusters) {
+    //--Read Cache
+    if (featureCache != null) {
+      Pair<long[],boolean[]> cached = featureCache.get(doc);
+      if (cached != null) { return cached; }
+    }
+    //--Extract
+    List<Long> values = new ArrayList<Long>();
+    List<Boolean> coreferent = new ArrayList<Boolean>();
+    //(positive instances)
+    MentionPairs positives = MentionPairs.withinEntities(doc, clusters);
+    while (positives.next()) {
+      addPairFeatures(values, positives.firstMention(), positives.secondMention(),
+          positives.first(), positives.second());
+      coreferent.add(true);
+    }
+    //(negative instances)
+    MentionPairs negatives = MentionPairs.acrossEntities(doc, clusters);
+    while (negatives.next()) {
+      addPairFeatures(values, negatives.firstMention(), negatives.secondMention(),
+          negatives.first(), negatives.second());
+      coreferent.add(false);
+    }
+    long[] valueArray = new long[values.size()];
+    for (int i = 0; i < valueArray.length; i++) { valueArray[i] = values.get(i); }
+    boolean[] coreferentArray = new boolean[coreferent.size()];
+    for (int i = 0; i < coreferentArray.length; i++) { coreferentArray[i] = coreferent.get(i); }
+    //--Write Cache
+    if (featureCache != null) {
+      try {
+        featureCache.put(doc, valueArray, coreferentArray, coreferentArray.length);
+      } catch (IOException e) {
+        System.err.println("Could not cache features of document " + doc.id + ": " + e.getMessage());
+      }
+    }
+    return Pair.make(valueArray, coreferentArray);
+  }
+
+  /** Append the features of a mention pair, in the order of FEATURE_NAMES */
+  private static void addPairFeatures(List<Long> values, Mention m1, Mention m2, int index1, int index2) {
+    values.add((long) java.lang.Math.abs(index1 - index2));
+    values.add((long) ((m1.profile().headLemmaId == m2.profile().headLemmaId) ? 0 : 1));
+    values.add((long) ((m1.profile().glossId == m2.profile().glossId) ? 0 : 1));
+    values.add((long) ((m1.profile().headWordId == m2.profile().headWordId) ? 0 : 1));
+  }
+
   /**
    * Build a logistic regression model  
    * @param dataset: input Weka dataset which the model is built on
@@ -212,9 +277,9 @@ public class EntityCentric implements CoreferenceSystem {
 
       Instance inst = new Instance(5);
       int  distance = java.lang.Math.abs(m1.doc.indexOfMention(m1) - m2.doc.indexOfMention(m2));
-      int lemmaMatch = (m1.headToken().lemma().equals(m2.headToken().lemma())) ? 0 : 1;
-      int exactMatch = (m1.gloss().equals(m2.gloss())) ? 0 : 1;
-      int exactHeadMatch = (m1.headWord().equals(m2.headWord())) ? 0 : 1 ;
+      int lemmaMatch = (m1.profile().headLemmaId == m2.profile().headLemmaId) ? 0 : 1;
+      int exactMatch = (m1.profile().glossId == m2.profile().glossId) ? 0 : 1;
+      int exactHeadMatch = (m1.profile().headWordId == m2.profile().headWordId) ? 0 : 1 ;
       inst.setValue(dataset.attribute(0),distance);
       inst.setValue(dataset.attribute(1),lemmaMatch);
       inst.setValue(dataset.attribute(2),exactMatch);
@@ -222,13 +287,13 @@ public class EntityCentric implements CoreferenceSystem {
       inst.setValue(dataset.attribute(4), "yes");
       inst.setMissing(inst.numAttributes()-1);  
         //System.out.println("distance = " + distance);
-        double prob[] = model.distributionForInstance(inst);
+        //(Logistic runs instances through its filters, which keep state; documents may be run concurrently)
+        double prob[];
+        synchronized(model){ prob = model.distributionForInstance(inst); }
         return prob[0];
      }
     catch(Exception e) {
-    // If it fails, write the error message to screen
-      e.printStackTrace(); 
-      return 99.0;
+      throw new RuntimeException("Could not score mention pair", e);
     } 
   }
   
@@ -287,7 +352,7 @@ public List<ClusteredMention> BestProbClassifier(List<ClusteredMention> currentC
    * Return TRUE if either mention is a pronoun
    */
   public boolean eitherIsPronoun(ClusteredMention cm1, ClusteredMention cm2) {
-    return Pronoun.isSomePronoun(cm1.mention.gloss()) || Pronoun.isSomePronoun(cm2.mention.gloss());
+    return cm1.mention.profile().isPronoun || cm2.mention.profile().isPronoun;
   }
   
   /**
@@ -307,7 +372,7 @@ public List<ClusteredMention> BestProbClassifier(List<ClusteredMention> currentC
       for (int j=i; j < currentClusters.size(); j++) {
         ClusteredMention cm2 = currentClusters.get(j);
         
-        if (!eitherIsPronoun(cm1, cm2) && cm1.mention.gloss().equals(cm2.mention.gloss())) {
+        if (!eitherIsPronoun(cm1, cm2) && cm1.mention.profile().glossId == cm2.mention.profile().glossId) {
           mergeClusters(cm1.entity, cm2.entity);
         }
         
@@ -329,7 +394,7 @@ public List<ClusteredMention> BestProbClassifier(List<ClusteredMention> currentC
         for (int j=i; j < currentClusters.size(); j++) {
           ClusteredMention cm2 = currentClusters.get(j);
 
-          if (!eitherIsPronoun(cm1, cm2) && cm1.mention.headWord().equals(cm2.mention.headWord())) {
+          if (!eitherIsPronoun(cm1, cm2) && cm1.mention.profile().headWordId == cm2.mention.profile().headWordId) {
             mergeClusters(cm1.entity, cm2.entity);
           }
         }
@@ -349,7 +414,7 @@ public List<ClusteredMention> BestProbClassifier(List<ClusteredMention> currentC
           ClusteredMention cm2 = currentClusters.get(j);
 
           if (!eitherIsPronoun(cm1, cm2)
-              && cm1.mention.headWord().toLowerCase().equals(cm2.mention.headWord().toLowerCase())) {
+              && cm1.mention.profile().lowerHeadWordId == cm2.mention.profile().lowerHeadWordId) {
             mergeClusters(cm1.entity, cm2.entity);
           }
         }
@@ -368,7 +433,7 @@ public List<ClusteredMention> BestProbClassifier(List<ClusteredMention> currentC
         ClusteredMention cm2 = currentClusters.get(j);
         
         if (!eitherIsPronoun(cm1, cm2)
-            && cm1.mention.headToken().lemma().equals(cm2.mention.headToken().lemma())) {
+            && cm1.mention.profile().headLemmaId == cm2.mention.profile().headLemmaId) {
           mergeClusters(cm1.entity, cm2.entity);
         }
       /*  if (cm1.mention.headToken().lemma().equals(cm2.mention.headToken().lemma())&containUppercase(cm1.mention.gloss())&&containUppercase(cm2.mention.gloss())&&!cm1.mention.gloss().equals(cm2.mention.gloss())){
@@ -408,7 +473,7 @@ public List<ClusteredMention> BestProbClassifier(List<ClusteredMention> currentC
         ClusteredMention cm2 = currentClusters.get(j);
         
         if (!eitherIsPronoun(cm1, cm2) && cm1.mention.gloss().contains(cm1.mention.headWord())
-            && cm1.mention.headToken().nerTag().equals(cm2.mention.headToken().nerTag())) {
+            && cm1.mention.profile().headNerId == cm2.mention.profile().headNerId) {
           mergeClusters(cm1.entity, cm2.entity);
         }
       }
@@ -434,7 +499,7 @@ public boolean mentionSelection(ClusteredMention cm){
         for (int j=0; j < currentClusters.size(); j++) {
           ClusteredMention cm2 = currentClusters.get(j);
           //if (mentionSelection(cm2)){
-            String acronym = acronym(cm1.mention.gloss());
+            String acronym = cm1.mention.profile().acronym;
             String base = cm2.mention.gloss();
             if (!eitherIsPronoun(cm1, cm2) && base.indexOf(acronym)>-1 && acronym.length()>1) {
               mergeClusters(cm1.entity, cm2.entity);
@@ -461,7 +526,7 @@ public boolean mentionSelection(ClusteredMention cm){
             && cm2.mention.sentence.length() > cm2.mention.endIndexExclusive
             && !cm1.mention.headToken().nerTag().equals("DATE") // Often dates are used in this way
             && !cm1.mention.headToken().nerTag().equals("GPE") // Often have place names used this way too
-            && cm1.mention.headToken().nerTag().equals(cm2.mention.headToken().nerTag()) // Things like "Patrick, ABC News, signing out"
+            && cm1.mention.profile().headNerId == cm2.mention.profile().headNerId // Things like "Patrick, ABC News, signing out"
             && cm2.mention.sentence.words.get(cm2.mention.endIndexExclusive).equals(",")
             && cm1.mention.sentence.words.get(cm1.mention.endIndexExclusive).equals(",")) {
               System.err.println("APPOSITIVE MATCH");
@@ -485,7 +550,7 @@ public boolean mentionSelection(ClusteredMention cm){
         if (cm1.mention.sentence.gloss().equals(cm2.mention.sentence.gloss())
             && (cm1.mention.endIndexExclusive+1) == cm2.mention.beginIndexInclusive
             && linkingVerbList.contains(cm1.mention.sentence.words.get(cm1.mention.endIndexExclusive).toLowerCase())
-            && cm1.mention.headToken().nerTag().equals(cm2.mention.headToken().nerTag())) {
+            && cm1.mention.profile().headNerId == cm2.mention.profile().headNerId) {
               mergeClusters(cm1.entity, cm2.entity);
         }
       }
@@ -561,19 +626,19 @@ public boolean mentionSelection(ClusteredMention cm){
         ClusteredMention cm2 = currentClusters.get(j);
         
         double length = 0, overlap = 0;
-        List<String> s_long, s_short;
+        MentionProfile s_long, s_short;
         if (cm1.mention.length() > cm2.mention.length()) {
           length = cm1.mention.length();
-          s_long = Arrays.asList(cm1.mention.gloss().split(" "));
-          s_short = Arrays.asList(cm2.mention.gloss().split(" "));
+          s_long = cm1.mention.profile();
+          s_short = cm2.mention.profile();
         } else {
           length = cm2.mention.length();
-          s_long = Arrays.asList(cm2.mention.gloss().split(" "));
-          s_short = Arrays.asList(cm1.mention.gloss().split(" "));
+          s_long = cm2.mention.profile();
+          s_short = cm1.mention.profile();
         }
         
-        for (String s : s_short) {
-          if (s_long.contains(s))
+        for (int w=0; w < s_short.glossWords.size(); w++) {
+          if (s_long.hasWord(s_short.wordId(w)))
             overlap++;
         }
         if (overlap/length > 0.66 && length > 3)
@@ -588,7 +653,7 @@ public boolean mentionSelection(ClusteredMention cm){
     List<ClusteredMention> nonList = new ArrayList<ClusteredMention>();
     for (ClusteredMention cm : currentClusters) {
       if (mentionSelection(cm)){
-        if (Pronoun.isSomePronoun(cm.mention.headWord())) {
+        if (cm.mention.profile().headIsPronoun) {
           proList.add(cm);
         } else {
           nonList.add(cm);
@@ -672,7 +737,7 @@ public boolean mentionSelection(ClusteredMention cm){
   public void hobbsMatch(List<ClusteredMention> currentClusters, Document doc) {
     for (ClusteredMention cm : currentClusters) {
       // Skip non-pronouns or mentions that have already been clustered
-      if (!Pronoun.isSomePronoun(cm.mention.gloss()) || cm.entity.size() > 1)
+      if (!cm.mention.profile().isPronoun || cm.entity.size() > 1)
         continue;
       /* DEBUG System.err.println("--- PRONOUN FOUND ---"); */
       Entity e = getHobbsParse(cm.mention, doc, currentClusters);
@@ -698,7 +763,7 @@ public boolean mentionSelection(ClusteredMention cm){
     
     if (matchUID > -1 && matchSentenceNum > -1) {
       Sentence matchSentence = d.sentences.get(matchSentenceNum);
-      Tree<String> matchParse = HobbsAlgorithm.returnSubtree(matchSentence.parse, matchUID);
+      Tree<String> matchParse = HobbsAlgorithm.returnSubtree(matchSentence, matchUID);
       
       for (ClusteredMention c : clusters) {
         if (matchSentence.equals(c.mention.sentence) && matchParse.equals(c.mention.parse)) {
@@ -760,9 +825,9 @@ public boolean mentionSelection(ClusteredMention cm){
   public boolean isWordInclusion(Entity entity, Mention newMention){
     String clusterString = new String();
       for (Mention m : entity.mentions)
-        clusterString += " " + m.gloss().toLowerCase();
+        clusterString += " " + m.profile().lowerGloss;
       
-    for (String word : newMention.gloss().toLowerCase().split(" ")){
+    for (String word : newMention.profile().lowerGlossWords){
       if (!stopWordList.contains(word) && !clusterString.contains(word))
         return false;
     }
@@ -793,7 +858,7 @@ public boolean mentionSelection(ClusteredMention cm){
    */
   public boolean isRelaxedClusterHeadMatch(Entity entity, Mention newMention){
     for (Mention m : entity.mentions){
-      if (m.gloss().toLowerCase().contains(newMention.headWord().toLowerCase()))
+      if (m.profile().lowerGloss.contains(newMention.profile().lowerHeadWord))
               return true;
     }
     return false;
@@ -832,10 +897,10 @@ public boolean mentionSelection(ClusteredMention cm){
    */
   public boolean isPersonMatch(Mention m1, Mention m2){
     boolean flag = true;
-    if (Pronoun.isSomePronoun(m1.gloss()) && Pronoun.isSomePronoun(m2.gloss())) {
+    if (m1.profile().isPronoun && m2.profile().isPronoun) {
       if (!(m1.headToken().isQuoted() || m2.headToken().isQuoted())) {
-        Pronoun p1 = Pronoun.valueOrNull(m1.gloss());
-        Pronoun p2 = Pronoun.valueOrNull(m2.gloss());
+        Pronoun p1 = m1.profile().pronoun;
+        Pronoun p2 = m2.profile().pronoun;
         if (p1 != null && p2 != null) {
           flag = (p1.speaker == p2.speaker);
         }
@@ -846,7 +911,7 @@ public boolean mentionSelection(ClusteredMention cm){
   
   boolean isPronounMatch(Mention m1, Mention m2) {
      
-    boolean nerMatch = m1.headToken().nerTag().equals(m2.headToken().nerTag());
+    boolean nerMatch = m1.profile().headNerId == m2.profile().headNerId;
     boolean lemmasMatch = true; // m1.headToken().lemma().equals(m2.headToken().lemma());
 
     return isGenderMatch(m1,m2) && isNumberMatch(m1,m2) && isPersonMatch(m1,m2) && nerMatch && lemmasMatch;
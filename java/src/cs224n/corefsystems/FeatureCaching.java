@@ -0,0 +1,19 @@
+package cs224n.corefsystems;
+
+import java.io.File;
+
+/**
+ * A coreference system which can cache the features it extracts for training on disk
+ * (see {@link cs224n.coref.FeatureCache}).
+ * When the tester is run with <code>-featureCache</code>, it calls setFeatureCache()
+ * before training.
+ */
+public interface FeatureCaching {
+
+  /**
+   * Cache training features under a directory.
+   * @param directory The root directory of the cache
+   * @param mentionSource The mentions the documents are given (gold or predicted), part of the cache key
+   */
+  public void setFeatureCache(File directory, String mentionSource);
+}
@@ -11,6 +11,7 @@ import cs224n.coref.Document;
 import cs224n.coref.Mention;
 import cs224n.coref.Sentence;
 import cs224n.ling.Tree;
+import cs224n.ling.TreeIndex;
 import cs224n.util.Pair;
 
 public class HobbsAlgorithm {
@@ -30,7 +31,7 @@ public class HobbsAlgorithm {
     int startIndex = m.beginIndexInclusive;
     int endIndex = m.endIndexExclusive;
     
-    LinkedList<Pair<String,Integer>> pathToStart = s.parse.pathToIndex(startIndex);
+    LinkedList<Pair<String,Integer>> pathToStart = s.parseIndex().pathToIndex(startIndex);
     
     // 1. Begin at the NP immediately dominating the pronoun
     int parentUID = commonParentIndex(s, startIndex, endIndex-1);
@@ -41,8 +42,8 @@ public class HobbsAlgorithm {
     
     // 3. Traverse all branches below X to the left of p, left-to right, breadth-first.
     //    Propose as antecedent any NP that has a NP or S between it and X
-    minUID = getMinPathUID(s.parse.pathToIndex(startIndex));
-    antecedent = getAntecedent(s.parse, minUID, xUID);
+    minUID = getMinPathUID(pathToStart);
+    antecedent = getAntecedent(s, minUID, xUID);
     if (antecedent > -1) {
       return new Pair<Integer,Integer>(antecedent, sentenceNum);
     }
@@ -52,7 +53,7 @@ public class HobbsAlgorithm {
     while (mainSUID != -1 && mainSUID != xUID) {
       // 5. From node X, go up the tree to the first NP or S. Call it X, and the path p.
       xUID = getX(s, startIndex, xUID);
-      Tree<String> subtree = returnSubtree(s.parse, xUID);
+      Tree<String> subtree = returnSubtree(s, xUID);
 
       // 6. If X is an NP and the path p to X came from a nonhead phrase of X (a specifier
       //    or adjunct, such as a possessive, PP, apposition, or relative clause),
@@ -67,8 +68,8 @@ public class HobbsAlgorithm {
       
       // 7. Traverse all branches below X to the left of the path, in a left-to-right,
       //    breadth first manner. Propose any NP encountered as the antecedent
-      minUID = getMinPathUID(s.parse.pathToIndex(startIndex));
-      antecedent = getAntecedent(s.parse, startIndex, xUID);
+      minUID = getMinPathUID(pathToStart);
+      antecedent = getAntecedent(s, startIndex, xUID);
       if (antecedent > -1) {
         return new Pair<Integer,Integer>(antecedent, sentenceNum);
       }
@@ -105,7 +106,7 @@ public class HobbsAlgorithm {
     while (sentenceNum > 0) {
       s = d.sentences.get(--sentenceNum);
       int rootUID = s.parse.getUniqueIndex();
-      antecedent = getAntecedent(s.parse, Integer.MAX_VALUE, rootUID);
+      antecedent = getAntecedent(s, Integer.MAX_VALUE, rootUID);
       if (antecedent > -1) {
         return new Pair<Integer,Integer>(antecedent, sentenceNum);
       }
@@ -127,7 +128,7 @@ public class HobbsAlgorithm {
    * Get the uniqueID of the highest S in the sentence (on the path to the mention)
    */
   public static int getHighestSUID(Sentence s, int startIndex) {
-    LinkedList<Pair<String,Integer>> path = s.parse.pathToIndex(startIndex);
+    LinkedList<Pair<String,Integer>> path = s.parseIndex().pathToIndex(startIndex);
     for (Pair<String,Integer> pair : path) {
       if (pair.getFirst().equals("S"))
         return pair.getSecond();
@@ -142,6 +143,27 @@ public class HobbsAlgorithm {
     Tree<String> subtree = returnSubtree(tree, xUID);
     List<Integer> matchingUIDs = getTagUIDs(subtree, "NP");
     matchingUIDs.addAll(getTagUIDs(subtree, "S"));
+    return getAntecedent(subtree, matchingUIDs, minUID);
+  }
+  
+  /**
+   * As getAntecedent(Tree, int, int), but finding X and its NPs and Ss from the
+   * index of the sentence's parse
+   */
+  public static int getAntecedent(Sentence s, int minUID, int xUID) {
+    if (s.parse == null || minUID == -1 || xUID == -1)
+      return -1;
+    
+    TreeIndex<String> index = s.parseIndex();
+    int x = index.nodeOfUniqueIndex(xUID);
+    if (x < 0)
+      return -1;
+    List<Integer> matchingUIDs = getTagUIDs(index, x, "NP");
+    matchingUIDs.addAll(getTagUIDs(index, x, "S"));
+    return getAntecedent(index.node(x), matchingUIDs, minUID);
+  }
+  
+  private static int getAntecedent(Tree<String> subtree, List<Integer> matchingUIDs, int minUID) {
     List<Tree<String>> bfsTree = getBreadthFirstTraversal(subtree);
     
     for (Tree<String> node : bfsTree) {
@@ -229,6 +251,20 @@ public class HobbsAlgorithm {
     return matches;
   }
   
+  /**
+   * Return list of UIDs matching a given tag, from the index of a tree
+   * @param index - The index of the whole tree
+   * @param root - The id (in the index) of the subtree to search
+   * @param tag
+   * @return
+   */
+  public static List<Integer> getTagUIDs(TreeIndex<String> index, int root, String tag) {
+    List<Integer> matches = new ArrayList<Integer>();
+    for (int node : index.nodesWithLabel(root, tag)) {
+      matches.add(index.node(node).getUniqueIndex());
+    }
+    return matches;
+  }
   
   
   /**
@@ -251,6 +287,16 @@ public class HobbsAlgorithm {
     return null;
   }
   
+  /**
+   * Get the subtree of a sentence's parse with a given targetUID, from the index of the parse
+   * @param s - Sentence with a valid .parse
+   * @param targetUID - uniqueIndex of the subtree parent
+   * @return a (sub)tree, or null if the parse has no such node
+   */
+  public static Tree<String> returnSubtree(Sentence s, int targetUID) {
+    return s.parseIndex().subtree(targetUID);
+  }
+  
   
   /**
    * Find the uniqueIndex of X
@@ -261,7 +307,7 @@ public class HobbsAlgorithm {
    */
   public static int getX(Sentence s, int wordIndex, int dominatingUID) {
     int xUID = -1;
-    LinkedList<Pair<String,Integer>> path = s.parse.pathToIndex(wordIndex);
+    LinkedList<Pair<String,Integer>> path = s.parseIndex().pathToIndex(wordIndex);
     
     for (Pair<String,Integer> node : path) {
       String tag = node.getFirst();
@@ -285,7 +331,7 @@ public class HobbsAlgorithm {
    * @return the uniqueIndex of the dominating NP
    */
   public static int getDominatingNP(Sentence s, int wordIndex, int commonParentUID) {
-    LinkedList<Pair<String,Integer>> path = s.parse.pathToIndex(wordIndex);
+    LinkedList<Pair<String,Integer>> path = s.parseIndex().pathToIndex(wordIndex);
     
     int dominatingUID = -1;
     for (Pair<String,Integer> node : path) {
@@ -328,27 +374,17 @@ public class HobbsAlgorithm {
   
   
   /**
-   * Get the uniqueIndex of the common parent between two words in a sentence
+   * Get the uniqueIndex of the common parent between two words in a sentence.
+   * This is the smallest constituent covering both words.
    * @param s - Sentence with a valid .parse
    * @param indexA - Word position of the first word
    * @param indexB - Word position of the second word
    * @return the uniqueIndex of the common parent element in the tree
    */
   public static int commonParentIndex(Sentence s, int indexA, int indexB) {
-    LinkedList<Pair<String,Integer>> pathA = s.parse.pathToIndex(indexA);
-    LinkedList<Pair<String,Integer>> pathB = s.parse.pathToIndex(indexA);
-
-    int maxDepth = Math.max(pathA.size(), pathB.size());
-    int result = -1;
-    
-    for (int i=0; i < maxDepth; i++) {
-      // When they stop matching, we just passed the common parent
-      if (pathA.get(i).getSecond() != pathB.get(i).getSecond())
-        break;
-      else
-        result = pathA.get(i).getSecond();
-    }
-    return result;
+    TreeIndex<String> index = s.parseIndex();
+    int parent = index.coveringConstituent(Math.min(indexA, indexB), Math.max(indexA, indexB) + 1);
+    return index.node(parent).getUniqueIndex();
   }
   
   
@@ -0,0 +1,16 @@
+package cs224n.corefsystems;
+
+/**
+ * A coreference system which can use more than one thread in train().
+ * The tester calls setTrainingThreads() with its <code>threads</code> property
+ * before training; a system should train to the same model whatever the number
+ * of threads.
+ */
+public interface MultithreadedTraining {
+
+  /**
+   * Set the number of threads to train with.
+   * @param numThreads The number of threads to use; one (the default) trains on the calling thread
+   */
+  public void setTrainingThreads(int numThreads);
+}
@@ -0,0 +1,27 @@
+package cs224n.corefsystems;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A coreference system whose trained model can be saved to a file, and loaded
+ * again instead of training.
+ * When the tester is run with <code>-saveModel</code>, it calls saveModel() after
+ * training; with <code>-loadModel</code>, it calls loadModel() instead of train().
+ */
+public interface PersistentModel {
+
+  /**
+   * Write the trained model.
+   * @param file The file to write to
+   * @throws IOException If the model could not be written
+   */
+  public void saveModel(File file) throws IOException;
+
+  /**
+   * Read a model written by saveModel(), replacing any model trained or loaded before.
+   * @param file The file to read from
+   * @throws IOException If the model could not be read, or does not fit this system
+   */
+  public void loadModel(File file) throws IOException;
+}
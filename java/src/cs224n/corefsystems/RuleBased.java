@@ -43,84 +43,46 @@ public class RuleBased implements CoreferenceSystem {
 
   @Override
   public List<ClusteredMention> runCoreference(Document doc) {
-    List<ClusteredMention> output;
+    MentionPartition clusters = new MentionPartition(doc);
     
-    output = allSingleton(doc);
+    exactMatch(clusters);
+    acronymMatch(clusters);
+    noStopWordMatch(clusters);
+    dropAfterHeadMatch(clusters);
+    //appositiveMatch(clusters);
+    headExactMatch(clusters);
+    headLowcaseMatch(clusters);
+    //headLemmaMatch(clusters);
+    //partialOverlapMatch(clusters);
+    //headLooseMatch(clusters);
+    //predicateNominativeMatch(clusters);
+    //hobbsMatch(clusters, doc);
+    pronounMatch(clusters);
+    //cutLongestMatch(clusters);
+    partialEntityMatch(clusters);
     
-    exactMatch(output); /*****/ output = updateCMList(output);
-    acronymMatch(output); /*****/ output = updateCMList(output);
-    noStopWordMatch(output); /*****/ output = updateCMList(output);
-    dropAfterHeadMatch(output); /*****/ output = updateCMList(output);
-    //appositiveMatch(output);
-    headExactMatch(output); /*****/ output = updateCMList(output);
-    headLowcaseMatch(output); /*****/ output = updateCMList(output);
-    //headLemmaMatch(output);
-    //partialOverlapMatch(output);
-    //headLooseMatch(output);
-    //predicateNominativeMatch(output);
-    //hobbsMatch(output, doc);
-    pronounMatch(output); /*****/ output = updateCMList(output);
-    //cutLongestMatch(output); output = updateCMList(output);
-    partialEntityMatch(output); /*****/
-    
-    int cntr=0;
-    for (ClusteredMention cm : output) {
-      if (cm.entity.size() == 1) {
-        //System.err.println(cm.mention);
-        cntr++;
-      }
-    }
-    //System.err.println("COUNTER: " + cntr);
-    
-    return output;
-  }
-  
-  public static List<ClusteredMention> updateCMList(List<ClusteredMention> clusters) {
-    List<ClusteredMention> output = new ArrayList<ClusteredMention>();
-    for (ClusteredMention cm : clusters) {
-      output.add(cm.mention.getClusteredMention());
-    }
-    return output;
+    return clusters.toClusteredMentions();
   }
   
   /**
    * Return TRUE if either mention is a pronoun
    */
-  public static boolean eitherIsPronoun(ClusteredMention cm1, ClusteredMention cm2) {
-    String s1 = cm1.mention.gloss();
-    String s2 = cm2.mention.gloss();
-    return Pronoun.isSomePronoun(s1) || Pronoun.isSomePronoun(s2);
-  }
-  
-  /**
-   * Convert all mentions into singleton ClusteredMentions
-   * @param doc - Document set with all Mentions
-   * @return list of all ClusteredMentions
-   */
-  public static List<ClusteredMention> allSingleton(Document doc) {
-    List<ClusteredMention> output = new ArrayList<ClusteredMention>();
-    for (Mention m : doc.getMentions()) {
-      ClusteredMention newCluster = m.markSingleton();
-      output.add(newCluster);
-    }
-    return output;
+  public static boolean eitherIsPronoun(Mention m1, Mention m2) {
+    return m1.profile().isPronoun || m2.profile().isPronoun;
   }
   
   /**
    * Merge clusters of any mentions with exact matches (excluding pronouns)
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public static void exactMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
-
-        String s1 = cm1.mention.gloss();
-        String s2 = cm2.mention.gloss();
+  public static void exactMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        if (!eitherIsPronoun(cm1, cm2) && cm1.mention.gloss().equals(cm2.mention.gloss())) {
-          mergeClusters(cm1.entity, cm2.entity);
+        if (!eitherIsPronoun(m1, m2) && m1.profile().glossId == m2.profile().glossId) {
+          clusters.union(i, j);
         }
       }
     }
@@ -128,16 +90,16 @@ public class RuleBased implements CoreferenceSystem {
   
   /**
    * Merge clusters if the head word matches exactly
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public static void headExactMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void headExactMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        if (!eitherIsPronoun(cm1, cm2) && cm1.mention.headWord().equals(cm2.mention.headWord())) {
-          mergeClusters(cm1.entity, cm2.entity);
+        if (!eitherIsPronoun(m1, m2) && m1.profile().headWordId == m2.profile().headWordId) {
+          clusters.union(i, j);
         }
       }
     }
@@ -145,17 +107,17 @@ public class RuleBased implements CoreferenceSystem {
   
   /**
    * Merge clusters if the head word matches exactly
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public static void headLowcaseMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void headLowcaseMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        if (!eitherIsPronoun(cm1, cm2)
-            && cm1.mention.headWord().toLowerCase().equals(cm2.mention.headWord().toLowerCase())) {
-          mergeClusters(cm1.entity, cm2.entity);
+        if (!eitherIsPronoun(m1, m2)
+            && m1.profile().lowerHeadWordId == m2.profile().lowerHeadWordId) {
+          clusters.union(i, j);
         }
       }
     }
@@ -163,17 +125,17 @@ public class RuleBased implements CoreferenceSystem {
   
   /**
    * Merge clusters if the head lemma matches
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public static void headLemmaMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void headLemmaMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        if (!eitherIsPronoun(cm1, cm2)
-            && cm1.mention.headToken().lemma().equals(cm2.mention.headToken().lemma())) {
-          mergeClusters(cm1.entity, cm2.entity);
+        if (!eitherIsPronoun(m1, m2)
+            && m1.profile().headLemmaId == m2.profile().headLemmaId) {
+          clusters.union(i, j);
         }
       }
     }
@@ -181,17 +143,17 @@ public class RuleBased implements CoreferenceSystem {
   
   /**
    * Merge clusters if the head words have an NER match
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public static void headLooseMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void headLooseMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        if (!eitherIsPronoun(cm1, cm2) && cm1.mention.gloss().contains(cm1.mention.headWord())
-            && cm1.mention.headToken().nerTag().equals(cm2.mention.headToken().nerTag())) {
-          mergeClusters(cm1.entity, cm2.entity);
+        if (!eitherIsPronoun(m1, m2) && m1.gloss().contains(m1.headWord())
+            && m1.profile().headNerId == m2.profile().headNerId) {
+          clusters.union(i, j);
         }
       }
     }
@@ -199,18 +161,18 @@ public class RuleBased implements CoreferenceSystem {
 
   /**
    * Merge clusters if one is an acronym of the other
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public static void acronymMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=0; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void acronymMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      String acronym = m1.profile().acronym;
+      for (int j=0; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        String acronym = acronym(cm1.mention.gloss());
-        String base = cm2.mention.gloss();
-        if (!eitherIsPronoun(cm1, cm2) && base.indexOf(acronym)>-1 && acronym.length()>1) {
-          mergeClusters(cm1.entity, cm2.entity);
+        String base = m2.gloss();
+        if (!eitherIsPronoun(m1, m2) && base.indexOf(acronym)>-1 && acronym.length()>1) {
+          clusters.union(i, j);
         }
       }
     }
@@ -218,24 +180,24 @@ public class RuleBased implements CoreferenceSystem {
   
   /**
    * Merges clusters if any two mentions are separate by just a comma
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public static void appositiveMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void appositiveMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
         // Merge if they occur in the same sentence and are separate by a comma
-        if (cm1.mention.sentence.gloss().equals(cm2.mention.sentence.gloss())
-            && (cm1.mention.endIndexExclusive+1) == cm2.mention.beginIndexInclusive
-            && cm2.mention.sentence.length() > cm2.mention.endIndexExclusive
-            && !cm1.mention.headToken().nerTag().equals("DATE") // Often dates are used in this way
-            && !cm1.mention.headToken().nerTag().equals("GPE") // Often have place names used this way too
-            && cm1.mention.headToken().nerTag().equals(cm2.mention.headToken().nerTag()) // Things like "Patrick, ABC News, signing out"
-            && cm2.mention.sentence.words.get(cm2.mention.endIndexExclusive).equals(",")
-            && cm1.mention.sentence.words.get(cm1.mention.endIndexExclusive).equals(",")) {
-              mergeClusters(cm1.entity, cm2.entity);
+        if (m1.sentence.gloss().equals(m2.sentence.gloss())
+            && (m1.endIndexExclusive+1) == m2.beginIndexInclusive
+            && m2.sentence.length() > m2.endIndexExclusive
+            && !m1.profile().headNer.equals("DATE") // Often dates are used in this way
+            && !m1.profile().headNer.equals("GPE") // Often have place names used this way too
+            && m1.profile().headNerId == m2.profile().headNerId // Things like "Patrick, ABC News, signing out"
+            && m2.sentence.words.get(m2.endIndexExclusive).equals(",")
+            && m1.sentence.words.get(m1.endIndexExclusive).equals(",")) {
+              clusters.union(i, j);
         }
       }
     }
@@ -243,20 +205,20 @@ public class RuleBased implements CoreferenceSystem {
   
   /**
    * Merges clusters if any two mentions are separate by just a comma
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public static void predicateNominativeMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void predicateNominativeMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
         // Merge if they occur in the same sentence and are separate by a comma
-        if (cm1.mention.sentence.gloss().equals(cm2.mention.sentence.gloss())
-            && (cm1.mention.endIndexExclusive+1) == cm2.mention.beginIndexInclusive
-            && linkingVerbList.contains(cm1.mention.sentence.words.get(cm1.mention.endIndexExclusive).toLowerCase())
-            && cm1.mention.headToken().nerTag().equals(cm2.mention.headToken().nerTag())) {
-              mergeClusters(cm1.entity, cm2.entity);
+        if (m1.sentence.gloss().equals(m2.sentence.gloss())
+            && (m1.endIndexExclusive+1) == m2.beginIndexInclusive
+            && linkingVerbList.contains(m1.sentence.words.get(m1.endIndexExclusive).toLowerCase())
+            && m1.profile().headNerId == m2.profile().headNerId) {
+              clusters.union(i, j);
         }
       }
     }
@@ -264,17 +226,17 @@ public class RuleBased implements CoreferenceSystem {
   
   /**
    * Merges clusters if all the words (minus stop words) are the same
-   * @param currentClusters - list of all ClusteredMentions
+   * @param clusters - partition of the document's mentions
    */
-  public static void noStopWordMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void noStopWordMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        if (!eitherIsPronoun(cm1, cm2)
-            && matchWithoutStopWords(cm1.mention.text(), cm2.mention.text())) {
-              mergeClusters(cm1.entity, cm2.entity);
+        if (!eitherIsPronoun(m1, m2)
+            && matchWithoutStopWords(m1.text(), m2.text())) {
+              clusters.union(i, j);
         }
       }
     }
@@ -297,19 +259,19 @@ public class RuleBased implements CoreferenceSystem {
   }
   
   
-  public static void dropAfterHeadMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void dropAfterHeadMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
         String s1 = "", s2 = "";
-        for (int k=cm1.mention.beginIndexInclusive; k <= cm1.mention.headWordIndex; k++)
-          s1 += cm1.mention.sentence.words.get(k);
-        for (int k=cm2.mention.beginIndexInclusive; k <= cm2.mention.headWordIndex; k++)
-          s2 += cm2.mention.sentence.words.get(k);
-        if (!eitherIsPronoun(cm1, cm2) && !s1.equals("") && s1.equals(s2)) {
-          mergeClusters(cm1.entity, cm2.entity);
+        for (int k=m1.beginIndexInclusive; k <= m1.headWordIndex; k++)
+          s1 += m1.sentence.words.get(k);
+        for (int k=m2.beginIndexInclusive; k <= m2.headWordIndex; k++)
+          s2 += m2.sentence.words.get(k);
+        if (!eitherIsPronoun(m1, m2) && !s1.equals("") && s1.equals(s2)) {
+          clusters.union(i, j);
         }
       }
     }
@@ -318,30 +280,30 @@ public class RuleBased implements CoreferenceSystem {
   /**
    * Match mentions that overlap a certain fraction of their words
    */
-  public static void partialOverlapMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void partialOverlapMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
         double length = 0, overlap = 0;
-        List<String> s_long, s_short;
-        if (cm1.mention.length() > cm2.mention.length()) {
-          length = cm1.mention.length();
-          s_long = Arrays.asList(cm1.mention.gloss().split(" "));
-          s_short = Arrays.asList(cm2.mention.gloss().split(" "));
+        MentionProfile s_long, s_short;
+        if (m1.length() > m2.length()) {
+          length = m1.length();
+          s_long = m1.profile();
+          s_short = m2.profile();
         } else {
-          length = cm2.mention.length();
-          s_long = Arrays.asList(cm2.mention.gloss().split(" "));
-          s_short = Arrays.asList(cm1.mention.gloss().split(" "));
+          length = m2.length();
+          s_long = m2.profile();
+          s_short = m1.profile();
         }
         
-        for (String s : s_long) {
-          if (s_short.contains(s))
+        for (int w=0; w < s_long.glossWords.size(); w++) {
+          if (s_short.hasWord(s_long.wordId(w)))
             overlap++;
         }
-        if (overlap/length > 0.8 && length > 1 && cm1.mention.headToken().nerTag().equals(cm2.mention.headToken().nerTag())) {
-          mergeClusters(cm1.entity, cm2.entity);
+        if (overlap/length > 0.8 && length > 1 && m1.profile().headNerId == m2.profile().headNerId) {
+          clusters.union(i, j);
         }
       }
     }
@@ -349,25 +311,20 @@ public class RuleBased implements CoreferenceSystem {
   
   /**
    * Merge the clusters if there is significant overlap among all words
-   * @param currentClusters
+   * @param clusters - partition of the document's mentions
    */
-  public static void partialEntityMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
-        
-        //if (cm1.entity.size() == 1 || cm2.entity.size() == 1)
-        //  continue;
+  public static void partialEntityMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      for (int j=i+1; j < clusters.size(); j++) {
+        if (clusters.sameCluster(i, j))
+          continue;
         
         List<String> set1 = new ArrayList<String>();
         List<String> set2 = new ArrayList<String>();
-        for (Mention m : cm1.entity.mentions)
-          for (String word : m.gloss().split(" "))
-              set1.add(word);
-        for (Mention m : cm2.entity.mentions)
-          for (String word : m.gloss().split(" "))
-              set2.add(word);
+        for (Mention m : clusters.cluster(i))
+          set1.addAll(m.profile().glossWords);
+        for (Mention m : clusters.cluster(j))
+          set2.addAll(m.profile().glossWords);
           
         double count1 = 0, match1 = 0;
         for (String s1 : set1) {
@@ -383,72 +340,64 @@ public class RuleBased implements CoreferenceSystem {
         }
         
         if ((match1/count1 + match2/count2)/2 > 0.9) {
-          mergeClusters(cm1.entity, cm2.entity);
-          if (!cm1.entity.equals(cm2.entity) && cm1.entity.size() > 0 && cm2.entity.size() > 0) {
-          System.err.println("--------");
-          System.err.println(cm1.entity);
-          System.err.println(cm2.entity);
-          System.err.println("--------");
-          }
+          clusters.union(i, j);
         }
       }
     }
   }
   
-  public static void pronounMatch(List<ClusteredMention> currentClusters) {
+  public static void pronounMatch(MentionPartition clusters) {
     // Separate pronouns from non-pronouns
-    List<ClusteredMention> proList = new ArrayList<ClusteredMention>();
-    List<ClusteredMention> nonList = new ArrayList<ClusteredMention>();
-    for (ClusteredMention cm : currentClusters) {
-      if (Pronoun.isSomePronoun(cm.mention.headWord())) {
-        proList.add(cm);
+    List<Integer> proList = new ArrayList<Integer>();
+    List<Integer> nonList = new ArrayList<Integer>();
+    for (int i=0; i < clusters.size(); i++) {
+      if (clusters.mention(i).profile().headIsPronoun) {
+        proList.add(i);
       } else {
-        nonList.add(cm);
+        nonList.add(i);
       }
     }
     
     // Assign every pronoun to the best match
-    for (ClusteredMention pro : proList) {
-      Entity bestMatch = null;
+    for (int pro : proList) {
+      Mention proMention = clusters.mention(pro);
+      int bestMatch = -1;
       int bestDistance = Integer.MAX_VALUE;
       
-      for (ClusteredMention non : nonList) {
-        int distance = pro.mention.doc.indexOfMention(pro.mention) - non.mention.doc.indexOfMention(non.mention);
+      for (int non : nonList) {
+        Mention nonMention = clusters.mention(non);
+        int distance = pro - non;
         if (distance < bestDistance && distance > 0
-            && isNerMatch(pro.mention, non.mention)
-            && isGenderMatch(pro.mention, non.mention)
-            && isNumberMatch(pro.mention, non.mention)
-            //&& isPersonMatch(pro.mention, non.mention)
+            && isNerMatch(proMention, nonMention)
+            && isGenderMatch(proMention, nonMention)
+            && isNumberMatch(proMention, nonMention)
+            //&& isPersonMatch(proMention, nonMention)
             ) {
           bestDistance = distance;
-          bestMatch = non.entity;
+          bestMatch = non;
         }
       }
-      if (bestMatch != null)
-        mergeClusters(pro.entity, bestMatch);
+      if (bestMatch >= 0)
+        clusters.union(pro, bestMatch);
     }
   }
   
-  public static void cutLongestMatch(List<ClusteredMention> currentClusters) {
-    for (int i=0; i < currentClusters.size(); i++) {
-      ClusteredMention cm1 = currentClusters.get(i);
-      for (int j=i+1; j < currentClusters.size(); j++) {
-        ClusteredMention cm2 = currentClusters.get(j);
+  public static void cutLongestMatch(MentionPartition clusters) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m1 = clusters.mention(i);
+      for (int j=i+1; j < clusters.size(); j++) {
+        Mention m2 = clusters.mention(j);
         
-        String s1 = cm1.mention.gloss();
-        String s2 = cm2.mention.gloss();
+        String s1 = m1.gloss();
+        String s2 = m2.gloss();
         
         if (s1.length() < s2.length())
           s2 = s2.substring(0, s1.length());
         else
           s1 = s1.substring(0, s2.length());
         
-        if (!eitherIsPronoun(cm1, cm2) && !s1.equals("") && s1.equals(s2)) {
-          if (cm1.entity.size() == 1) {
-            System.err.println("--------");
-            System.err.print(cm1.mention.gloss().equals(cm2.mention.gloss()) + ": " + cm1.mention + " ~~~~ " + cm2.mention);
-          }
-          mergeClusters(cm1.entity, cm2.entity);
+        if (!eitherIsPronoun(m1, m2) && !s1.equals("") && s1.equals(s2)) {
+          clusters.union(i, j);
         }
       }
     }
@@ -490,28 +439,29 @@ public class RuleBased implements CoreferenceSystem {
   
   
   
-  public static void hobbsMatch(List<ClusteredMention> currentClusters, Document doc) {
-    for (ClusteredMention cm : currentClusters) {
+  public static void hobbsMatch(MentionPartition clusters, Document doc) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m = clusters.mention(i);
       // Skip non-pronouns or mentions that have already been clustered
-      if (!Pronoun.isSomePronoun(cm.mention.gloss()) || cm.entity.size() > 1)
+      if (!m.profile().isPronoun || clusters.clusterSize(i) > 1)
         continue;
       /* DEBUG System.err.println("--- PRONOUN FOUND ---"); */
-      Entity e = getHobbsParse(cm.mention, doc, currentClusters);
-      if (e != null)
-        cm.mention.changeCoreference(e);
+      int match = getHobbsParse(m, doc, clusters);
+      if (match >= 0)
+        clusters.union(i, match);
     }
   }
   
   
   /**
-   * Get the matching entity for a Hobbs Parse
+   * Get the matching mention for a Hobbs Parse
    * @param m - Mention with the pronoun to match
    * @param d - Document set for parsing
-   * @param clusters - Cluster list to use in finding the matching entity
-   * @return Entity of the matching mention
+   * @param clusters - partition of the document's mentions
+   * @return index of the matching mention, or -1 if there is none
    */
-  public static Entity getHobbsParse(Mention m, Document d, List<ClusteredMention> clusters) {
-    Entity matchingEntity = null;
+  public static int getHobbsParse(Mention m, Document d, MentionPartition clusters) {
+    int matchingMention = -1;
     
     Pair<Integer,Integer> match = HobbsAlgorithm.parse(d, m);
     int matchUID = match.getFirst();
@@ -519,41 +469,29 @@ public class RuleBased implements CoreferenceSystem {
     
     if (matchUID > -1 && matchSentenceNum > -1) {
       Sentence matchSentence = d.sentences.get(matchSentenceNum);
-      Tree<String> matchParse = HobbsAlgorithm.returnSubtree(matchSentence.parse, matchUID);
+      Tree<String> matchParse = HobbsAlgorithm.returnSubtree(matchSentence, matchUID);
       
-      for (ClusteredMention c : clusters) {
-        if (matchSentence.equals(c.mention.sentence) && matchParse.equals(c.mention.parse)
-            && isNerMatch(c.mention, m) && isGenderMatch(c.mention, m) && isNumberMatch(c.mention, m)) {
-          matchingEntity = c.entity;
+      for (int i=0; i < clusters.size(); i++) {
+        Mention c = clusters.mention(i);
+        if (matchSentence.equals(c.sentence) && matchParse.equals(c.parse)
+            && isNerMatch(c, m) && isGenderMatch(c, m) && isNumberMatch(c, m)) {
+          matchingMention = i;
         }
       }
     }
     
-    return matchingEntity;
+    return matchingMention;
   }
   
   
-  /**
-   * Merge all mentions from e1 to e2
-   */
-  public static void mergeClusters(Entity e1, Entity e2) {
-    List<Mention> m1List = new ArrayList<Mention>();
-    for (Mention m1 : e1.mentions) {
-      m1List.add(m1);
-    }
-    for (Mention m1 : m1List) {
-      m1.changeCoreference(e2);
-    }
-  }
-  
   /**
    * Convert Hobbs output to a mention
    */
-  public static ClusteredMention hobbsToMention(List<ClusteredMention> clusters, Sentence s, List<String> words) {
-    for (ClusteredMention cm : clusters) {
-      Mention m = cm.mention;
+  public static Mention hobbsToMention(MentionPartition clusters, Sentence s, List<String> words) {
+    for (int i=0; i < clusters.size(); i++) {
+      Mention m = clusters.mention(i);
       if (m.sentence == s && stringListMatch(m.text(), words))
-        return cm;
+        return m;
     }
     return null;
   }
@@ -582,9 +520,9 @@ public class RuleBased implements CoreferenceSystem {
   public boolean isWordInclusion(Entity entity, Mention newMention){
     String clusterString = new String();
       for (Mention m : entity.mentions)
-        clusterString += " " + m.gloss().toLowerCase();
+        clusterString += " " + m.profile().lowerGloss;
       
-    for (String word : newMention.gloss().toLowerCase().split(" ")){
+    for (String word : newMention.profile().lowerGlossWords){
       if (!stopWordList.contains(word) && !clusterString.contains(word))
         return false;
     }
@@ -615,7 +553,7 @@ public class RuleBased implements CoreferenceSystem {
    */
   public static boolean isRelaxedClusterHeadMatch(Entity entity, Mention newMention){
     for (Mention m : entity.mentions){
-      if (m.gloss().toLowerCase().contains(newMention.headWord().toLowerCase()))
+      if (m.profile().lowerGloss.contains(newMention.profile().lowerHeadWord))
               return true;
     }
     return false;
@@ -654,10 +592,10 @@ public class RuleBased implements CoreferenceSystem {
    */
   public static boolean isPersonMatch(Mention m1, Mention m2){
     boolean flag = true;
-    if (Pronoun.isSomePronoun(m1.gloss()) && Pronoun.isSomePronoun(m2.gloss())) {
+    if (m1.profile().isPronoun && m2.profile().isPronoun) {
       if (!(m1.headToken().isQuoted() || m2.headToken().isQuoted())) {
-        Pronoun p1 = Pronoun.valueOrNull(m1.gloss());
-        Pronoun p2 = Pronoun.valueOrNull(m2.gloss());
+        Pronoun p1 = m1.profile().pronoun;
+        Pronoun p2 = m2.profile().pronoun;
         if (p1 != null && p2 != null) {
           flag = (p1.speaker == p2.speaker);
         }
@@ -668,7 +606,7 @@ public class RuleBased implements CoreferenceSystem {
   
   boolean isPronounMatch(Mention m1, Mention m2) {
      
-    boolean nerMatch = m1.headToken().nerTag().equals(m2.headToken().nerTag());
+    boolean nerMatch = m1.profile().headNerId == m2.profile().headNerId;
     boolean lemmasMatch = true; // m1.headToken().lemma().equals(m2.headToken().lemma());
 
     return isGenderMatch(m1,m2) && isNumberMatch(m1,m2) && isPersonMatch(m1,m2) && nerMatch && lemmasMatch;
@@ -2,12 +2,15 @@ package cs224n.ling;
 
 import cs224n.util.Decodable;
 import cs224n.util.Pair;
+import cs224n.util.WeakInterner;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represent linguistic trees, with each node consisting of a label
@@ -16,11 +19,16 @@ import java.util.List;
  * @author Gabor Angeli (custom serialization; equals() and hashCode())
  */
 public class Tree<L> implements Serializable, Decodable {
-  private static int nextUniqueIndex = 0;
+  private static final AtomicInteger nextUniqueIndex = new AtomicInteger(0);
 
   private L label;
   private List<Tree<L>> children;
-  private int uniqueIndex = nextUniqueIndex++;
+  private int uniqueIndex = nextUniqueIndex.getAndIncrement();
+  /**
+   * The structural hash of this tree (of its label and its children's hashes),
+   * computed on first use; 0 if not yet computed.
+   */
+  private transient int hash = 0;
 
 
   public List<Tree<L>> getChildren() {
@@ -28,12 +36,14 @@ public class Tree<L> implements Serializable, Decodable {
   }
   public void setChildren(List<Tree<L>> children) {
     this.children = children;
+    this.hash = 0;
   }
   public L getLabel() {
     return label;
   }
   public void setLabel(L label) {
     this.label = label;
+    this.hash = 0;
   }
 
   public int getUniqueIndex() {
@@ -63,6 +73,18 @@ public class Tree<L> implements Serializable, Decodable {
     return yield;
   }
 
+  /* Returns the number of leaves of this tree, without building its yield */
+  private int numLeaves() {
+    if (isLeaf()) {
+      return 1;
+    }
+    int count = 0;
+    for (Tree<L> child : getChildren()) {
+      count += child.numLeaves();
+    }
+    return count;
+  }
+
   private static <L> void appendYield(Tree<L> tree, List<L> yield) {
     if (tree.isLeaf()) {
       yield.add(tree.getLabel());
@@ -203,34 +225,29 @@ public class Tree<L> implements Serializable, Decodable {
    * Returns a path from the ROOT node of the tree to the leaf at the given index
    * @param index The index of the leaf to search for
    * @return A list of pairs, where the first element of the pair is the nonterminal,
-   * and the second element is the unique index of the tree node
+   * and the second element is the unique index of the tree node.
+   * For repeated queries on the same tree, {@link TreeIndex#pathToIndex(int)} avoids
+   * walking the tree each time.
    */
   public LinkedList<Pair<L,Integer>> pathToIndex(int index){
-    //--Base Case
-    if(this.isLeaf()){
-      return new LinkedList<Pair<L,Integer>>();
-    }
-    //--Recursive Case
-    //(get children)
-    List<Tree<L>> children = this.getChildren();
-    //(get child with relevant span)
-    int yieldSoFar = 0;
-    int childIndex = 0;
-    int lastYield = 0;
-    while(yieldSoFar <= index){
-      lastYield = children.get(childIndex).getYield().size();
-      yieldSoFar += lastYield;
-      childIndex += 1;
+    LinkedList<Pair<L,Integer>> path = new LinkedList<Pair<L,Integer>>();
+    Tree<L> node = this;
+    while(!node.isLeaf()){
+      //(add this node)
+      path.addLast(Pair.make(node.label, node.uniqueIndex));
+      //(get child with relevant span)
+      List<Tree<L>> children = node.getChildren();
+      int childIndex = 0;
+      int childYield = children.get(0).numLeaves();
+      while(childYield <= index){
+        index -= childYield;
+        childIndex += 1;
+        childYield = children.get(childIndex).numLeaves();
+      }
+      node = children.get(childIndex);
     }
-    //(move back one step)
-    childIndex -= 1;
-    yieldSoFar -= lastYield;
-    //(get rest of path)
-    LinkedList<Pair<L,Integer>> restOfPath = children.get(childIndex).pathToIndex(index - yieldSoFar);
-    //(add this node)
-    restOfPath.addFirst(Pair.make(this.label, this.uniqueIndex));
     //(return)
-    return restOfPath;
+    return path;
   }
 
   /* Returns a string representation of this tree using bracket
@@ -269,8 +286,11 @@ public class Tree<L> implements Serializable, Decodable {
 
   @SuppressWarnings({"unchecked"})
   public boolean equals(Object o){
+    if(o == this){ return true; }
     if(o instanceof Tree) {
       Tree<L> other = (Tree<L>) o;
+      //(trees with different structural hashes differ; this is the common case)
+      if(other.hashCode() != this.hashCode()){ return false; }
       if(!other.getLabel().equals(this.getLabel())){ return false; }
       if(other.children.size() != this.children.size()){ return false; }
       for(int i=0; i<children.size(); i++){
@@ -282,8 +302,56 @@ public class Tree<L> implements Serializable, Decodable {
     }
   }
 
+  /**
+   * A structural hash of the tree, combining its label with the hashes of its
+   * children, so that equal trees have equal hashes and different trees almost
+   * never do.
+   * The hash is computed once per node and cached. A tree should therefore not be
+   * changed below a node once that node has been hashed (or compared with equals());
+   * setLabel() and setChildren() only reset the hash of the node they are called on.
+   * @return The structural hash of the tree
+   */
   public int hashCode(){
-    return label.hashCode() ^ (children.size()<<16);
+    int hash = this.hash;
+    if(hash == 0){
+      hashSubtrees(this);
+      hash = this.hash;
+    }
+    return hash;
+  }
+
+  /* Compute the hash of every node of the tree which does not have one yet,
+   * children before parents, without recursing (trees may be deep) */
+  private static <L> void hashSubtrees(Tree<L> root) {
+    ArrayList<Tree<L>> stack = new ArrayList<Tree<L>>();
+    stack.add(root);
+    while (!stack.isEmpty()) {
+      Tree<L> node = stack.get(stack.size() - 1);
+      //(push children which are not hashed yet)
+      boolean ready = true;
+      for (Tree<L> child : node.children) {
+        if (child.hash == 0) {
+          stack.add(child);
+          ready = false;
+        }
+      }
+      //(hash this node once its children are hashed)
+      if (ready) {
+        int hash = node.label == null ? 0 : node.label.hashCode();
+        for (Tree<L> child : node.children) {
+          hash = 31 * hash + child.hash;
+        }
+        hash ^= node.children.size() << 16;
+        //(mix the bits, so that small changes deep in the tree spread to every bit)
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        node.hash = hash == 0 ? 1 : hash;
+        stack.remove(stack.size() - 1);
+      }
+    }
   }
 
   /* The leaf constructor. */
@@ -310,44 +378,97 @@ public class Tree<L> implements Serializable, Decodable {
     return toString();
   }
 
-  private static Pair<ArrayList<Tree<String>>,Integer> decodeChildren(char[] encoded, int pos, int depth){
-    ArrayList<Tree<String>> children = new ArrayList<Tree<String>>();
-    //(beginning whitespace)
-    while(encoded[pos] == ' '){ pos +=1; }
-    //(get children)
-    while(pos < encoded.length && encoded[pos] != ')'){
-      Pair<Tree<String>, Integer> childPair = decodeTree(encoded, pos, depth);
-      children.add(childPair.getFirst());
-      pos = childPair.getSecond();
-    }
-    //(return)
-    pos += 1;
-    return Pair.make(children,pos);
-  }
-  private static Pair<Tree<String>,Integer> decodeTree(char[] encoded, int pos, int depth){
-    //(beginning whitespace)
-    while(encoded[pos] == ' '){ pos +=1; }
-    //(skip open paren)
-    if(encoded[pos] == '('){ pos += 1; }
-    //(get head)
-    StringBuilder head = new StringBuilder();
-    while(encoded[pos] != ' ' && encoded[pos] != ')'){
-      head.append(encoded[pos]);
-      pos += 1;
-    }
-    //(get children)
-    if(pos >= encoded.length || encoded[pos] == ')'){
-      return Pair.make(new Tree<String>(head.toString()),pos);
-    } else {
-      Pair<ArrayList<Tree<String>>, Integer> childrenPair = decodeChildren(encoded, pos, depth+1);
-      return Pair.make(new Tree<String>(head.toString(),childrenPair.getFirst()),childrenPair.getSecond());
+  /**
+   * The labels of the decoded trees in use, so that repeated labels (e.g. "NP", "DT", "the")
+   * share a single instance; labels are released with the last tree using them
+   */
+  private static final WeakInterner<String> labels = new WeakInterner<String>();
+  /**
+   * A lossy cache in front of the interner, by the hash of a label's characters, so
+   * that most labels are found without creating a String for them.
+   * Entries are immutable Strings, so racing writes at worst lose an entry.
+   * The cache holds at most 4096 labels alive, however many trees are decoded.
+   */
+  private static final String[] recentLabels = new String[4096];
+
+  private static String label(String encoded, int start, int end){
+    //(hash the characters, as String.hashCode() would)
+    int hash = 0;
+    for(int i=start; i<end; i++){ hash = 31 * hash + encoded.charAt(i); }
+    int slot = (hash ^ (hash >>> 12)) & (recentLabels.length - 1);
+    //(look up the cache)
+    String cached = recentLabels[slot];
+    if(cached != null && cached.length() == end - start && encoded.regionMatches(start, cached, 0, end - start)){
+      return cached;
     }
+    //(intern)
+    String label = labels.intern(encoded.substring(start, end));
+    recentLabels[slot] = label;
+    return label;
+  }
+
+  private static boolean isLabelEnd(String encoded, int pos){
+    return pos >= encoded.length() || encoded.charAt(pos) == ' ' || encoded.charAt(pos) == ')';
   }
+
+  private static int skipSpaces(String encoded, int pos){
+    while(pos < encoded.length() && encoded.charAt(pos) == ' '){ pos += 1; }
+    return pos;
+  }
+
+  /**
+   * Decode a tree from its bracketed form, as given by toString().
+   * The tree is read in a single pass with an explicit stack (so that deep trees
+   * cannot overflow the call stack), and labels are interned. Nodes are created
+   * children first, so their unique indices are in post-order.
+   * This method is thread-safe.
+   * @param encoded The bracketed tree
+   * @return The decoded tree
+   */
   public static Tree<String> decode(String encoded){
-    if(!encoded.contains("(") && !encoded.contains(")")){
+    if(encoded.indexOf('(') < 0 && encoded.indexOf(')') < 0){
       return new Tree<String>(encoded);
-    } else {
-      return decodeTree(encoded.toCharArray(), 0, 0).getFirst();
+    }
+    //--Variables
+    //(the labels of the open nodes, and where their children start in the finished nodes)
+    String[] openLabels = new String[16];
+    int[] openChildren = new int[16];
+    int depth = 0;
+    //(finished nodes whose parent is still open)
+    ArrayList<Tree<String>> finished = new ArrayList<Tree<String>>();
+    int pos = 0;
+    //--Parse
+    while(true){
+      //(read a node's label)
+      pos = skipSpaces(encoded, pos);
+      if(pos < encoded.length() && encoded.charAt(pos) == '('){ pos += 1; }
+      int labelStart = pos;
+      while(!isLabelEnd(encoded, pos)){ pos += 1; }
+      String label = label(encoded, labelStart, pos);
+      if(pos >= encoded.length() || encoded.charAt(pos) == ')'){
+        //(case: a leaf)
+        finished.add(new Tree<String>(label));
+      } else {
+        //(case: open a node)
+        if(depth == openLabels.length){
+          openLabels = Arrays.copyOf(openLabels, 2 * depth);
+          openChildren = Arrays.copyOf(openChildren, 2 * depth);
+        }
+        openLabels[depth] = label;
+        openChildren[depth] = finished.size();
+        depth += 1;
+        pos = skipSpaces(encoded, pos);
+      }
+      //(close every node whose children are done)
+      while(depth > 0 && (pos >= encoded.length() || encoded.charAt(pos) == ')')){
+        depth -= 1;
+        List<Tree<String>> children = finished.subList(openChildren[depth], finished.size());
+        Tree<String> node = new Tree<String>(openLabels[depth], new ArrayList<Tree<String>>(children));
+        children.clear();
+        finished.add(node);
+        pos += 1;
+      }
+      if(depth == 0){ return finished.get(0); }
     }
   }
 }
@@ -0,0 +1,284 @@
+package cs224n.ling;
+
+import cs224n.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index over the nodes of a tree, built once, for answering structural
+ * queries (paths to leaves, common ancestors, covering constituents, nodes
+ * by unique index) without walking the tree again.
+ *
+ * Nodes are numbered in pre-order, so the root is node 0, and the nodes of the
+ * subtree rooted at node n are n through n+size(n)-1.
+ * Every query is O(depth) or faster.
+ *
+ * The index is a snapshot: it does not see changes made to the tree after it
+ * is built.
+ */
+public class TreeIndex<L> {
+
+  private final Tree<L>[] nodes;
+  private final int[] parent;
+  private final int[] depth;
+  private final int[] size;
+  private final int[] start;
+  private final int[] end;
+  private final int[] labelId;
+  /** The labels of this tree, as small integers; each index numbers its own labels */
+  private final Map<L,Integer> labelIds = new HashMap<L,Integer>();
+  private final int[] leaves;
+  /** The unique indices of the nodes, sorted, and the node of each */
+  private final int[] uniqueIndices;
+  private final int[] uniqueIndexNodes;
+
+  /**
+   * Index a tree.
+   * @param root The tree to index
+   */
+  @SuppressWarnings({"unchecked"})
+  public TreeIndex(Tree<L> root){
+    //--Number Nodes
+    List<Tree<L>> preOrder = root.getPreOrderTraversal();
+    int n = preOrder.size();
+    this.nodes = (Tree<L>[]) preOrder.toArray(new Tree<?>[n]);
+    this.parent = new int[n];
+    this.depth = new int[n];
+    this.size = new int[n];
+    this.start = new int[n];
+    this.end = new int[n];
+    this.labelId = new int[n];
+    //--Fill Structure
+    //(parents, depths, sizes and leaf spans)
+    this.leaves = new int[countLeaves(root)];
+    visit(root, 0, -1, 0, 0);
+    //(labels)
+    for(int i=0; i<n; i++){
+      L label = nodes[i].getLabel();
+      Integer id = labelIds.get(label);
+      if(id == null){
+        id = labelIds.size();
+        labelIds.put(label, id);
+      }
+      labelId[i] = id;
+    }
+    //(unique indices)
+    long[] byUniqueIndex = new long[n];
+    for(int i=0; i<n; i++){
+      byUniqueIndex[i] = ((long) nodes[i].getUniqueIndex() << 32) | i;
+    }
+    Arrays.sort(byUniqueIndex);
+    this.uniqueIndices = new int[n];
+    this.uniqueIndexNodes = new int[n];
+    for(int i=0; i<n; i++){
+      uniqueIndices[i] = (int) (byUniqueIndex[i] >> 32);
+      uniqueIndexNodes[i] = (int) byUniqueIndex[i];
+    }
+  }
+
+  private static <L> int countLeaves(Tree<L> tree){
+    if(tree.isLeaf()){ return 1; }
+    int count = 0;
+    for(Tree<L> child : tree.getChildren()){ count += countLeaves(child); }
+    return count;
+  }
+
+  /**
+   * Fill in the structure of a subtree, whose root is numbered id
+   * @return The id of the node after the subtree, in pre-order
+   */
+  private int visit(Tree<L> tree, int id, int parentId, int depthOfNode, int firstLeaf){
+    parent[id] = parentId;
+    depth[id] = depthOfNode;
+    start[id] = firstLeaf;
+    int next = id + 1;
+    int leaf = firstLeaf;
+    if(tree.isLeaf()){
+      leaves[leaf] = id;
+      leaf += 1;
+    }
+    for(Tree<L> child : tree.getChildren()){
+      int childId = next;
+      next = visit(child, childId, id, depthOfNode + 1, leaf);
+      leaf = end[childId];
+    }
+    end[id] = leaf;
+    size[id] = next - id;
+    return next;
+  }
+
+  /**
+   * The number of nodes in the tree
+   * @return The number of nodes
+   */
+  public int numNodes(){ return nodes.length; }
+
+  /**
+   * The number of leaves (words) in the tree
+   * @return The number of leaves
+   */
+  public int numLeaves(){ return leaves.length; }
+
+  /**
+   * The node with the given id
+   * @param node The id of the node (its pre-order position)
+   * @return The subtree rooted at that node
+   */
+  public Tree<L> node(int node){ return nodes[node]; }
+
+  /**
+   * @param node The id of a node
+   * @return The label of the node
+   */
+  public L label(int node){ return nodes[node].getLabel(); }
+
+  /**
+   * @param node The id of a node
+   * @return An integer identifying the label of the node; equal labels have equal ids.
+   * Ids are only comparable within one index.
+   */
+  public int labelId(int node){ return labelId[node]; }
+
+  /**
+   * @param label A label
+   * @return The id of the label, as given by {@link TreeIndex#labelId(int)}, or -1 if
+   * no node of this tree has that label
+   */
+  public int idOfLabel(Object label){
+    Integer id = labelIds.get(label);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * @param node The id of a node
+   * @return The id of the node's parent, or -1 for the root
+   */
+  public int parent(int node){ return parent[node]; }
+
+  /**
+   * @param node The id of a node
+   * @return The depth of the node; the root is at depth 0
+   */
+  public int depth(int node){ return depth[node]; }
+
+  /**
+   * @param node The id of a node
+   * @return The number of nodes in the subtree rooted at the node
+   */
+  public int size(int node){ return size[node]; }
+
+  /**
+   * @param node The id of a node
+   * @return The index of the first leaf under the node
+   */
+  public int start(int node){ return start[node]; }
+
+  /**
+   * @param node The id of a node
+   * @return The index after the last leaf under the node
+   */
+  public int end(int node){ return end[node]; }
+
+  /**
+   * @param leafIndex The index of a leaf (word)
+   * @return The id of the leaf's node
+   */
+  public int leaf(int leafIndex){ return leaves[leafIndex]; }
+
+  /**
+   * The node with the given unique index (see {@link Tree#getUniqueIndex()}).
+   * @param uniqueIndex The unique index of a node of the tree
+   * @return The id of the node, or -1 if no node of the tree has that unique index
+   */
+  public int nodeOfUniqueIndex(int uniqueIndex){
+    int i = Arrays.binarySearch(uniqueIndices, uniqueIndex);
+    return i < 0 ? -1 : uniqueIndexNodes[i];
+  }
+
+  /**
+   * The subtree with the given unique index
+   * @param uniqueIndex The unique index of a node of the tree
+   * @return The subtree, or null if no node of the tree has that unique index
+   */
+  public Tree<L> subtree(int uniqueIndex){
+    int node = nodeOfUniqueIndex(uniqueIndex);
+    return node < 0 ? null : nodes[node];
+  }
+
+  /**
+   * The nodes on the path from the root to a leaf, excluding the leaf itself.
+   * @param leafIndex The index of the leaf
+   * @return The ids of the nodes, root first
+   */
+  public int[] pathToLeaf(int leafIndex){
+    int node = leaves[leafIndex];
+    int[] path = new int[depth[node]];
+    for(int i=path.length-1; i>=0; i--){
+      node = parent[node];
+      path[i] = node;
+    }
+    return path;
+  }
+
+  /**
+   * The same path as {@link Tree#pathToIndex(int)}, from the index.
+   * @param leafIndex The index of the leaf
+   * @return A list of pairs of the label and the unique index of each node, root first
+   */
+  public LinkedList<Pair<L,Integer>> pathToIndex(int leafIndex){
+    LinkedList<Pair<L,Integer>> path = new LinkedList<Pair<L,Integer>>();
+    for(int node : pathToLeaf(leafIndex)){
+      path.addLast(Pair.make(nodes[node].getLabel(), nodes[node].getUniqueIndex()));
+    }
+    return path;
+  }
+
+  /**
+   * The lowest common ancestor of two nodes
+   * @param a The id of the first node
+   * @param b The id of the second node
+   * @return The id of the deepest node dominating both (possibly one of them)
+   */
+  public int lowestCommonAncestor(int a, int b){
+    while(depth[a] > depth[b]){ a = parent[a]; }
+    while(depth[b] > depth[a]){ b = parent[b]; }
+    while(a != b){
+      a = parent[a];
+      b = parent[b];
+    }
+    return a;
+  }
+
+  /**
+   * The smallest constituent (non-leaf node) covering a span of leaves.
+   * @param beginInclusive The first leaf of the span
+   * @param endExclusive The leaf after the span
+   * @return The id of the smallest non-leaf node covering the span
+   */
+  public int coveringConstituent(int beginInclusive, int endExclusive){
+    int node = lowestCommonAncestor(leaves[beginInclusive], leaves[endExclusive - 1]);
+    if(nodes[node].isLeaf()){ node = parent[node]; }
+    return node;
+  }
+
+  /**
+   * The nodes with a given label in the subtree of a node, in pre-order
+   * @param root The id of the root of the subtree
+   * @param label The label to look for
+   * @return The ids of the matching nodes
+   */
+  public List<Integer> nodesWithLabel(int root, L label){
+    int id = idOfLabel(label);
+    List<Integer> matches = new ArrayList<Integer>();
+    if(id < 0){ return matches; }
+    for(int node=root; node<root+size[root]; node++){
+      if(labelId[node] == id){ matches.add(node); }
+    }
+    return matches;
+  }
+}
@@ -0,0 +1,106 @@
+package cs224n.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache, bounded both in the number of entries and in the
+ * total weight of the entries (e.g., their size in bytes).
+ * Values are computed on a miss by a Loader; the loader is called outside of the
+ * cache's lock, so that several threads may load different keys at once.
+ */
+public class BoundedCache<K,V> {
+  public static interface Loader<K,V>{
+    /** Compute the value for a key which is not in the cache */
+    public V load(K key);
+    /** The weight of an entry, counted against the cache's maximum weight */
+    public long weight(K key, V value);
+  }
+
+  private final Loader<K,V> loader;
+  private final int maxEntries;
+  private final long maxWeight;
+
+  private final LinkedHashMap<K,V> cache = new LinkedHashMap<K,V>(16, 0.75f, true);
+  private final LinkedHashMap<K,Long> weights = new LinkedHashMap<K,Long>();
+  private long totalWeight = 0;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  /**
+   * Create a new cache.
+   * @param loader The function computing values on a cache miss
+   * @param maxEntries The maximum number of entries to keep; 0 disables caching
+   * @param maxWeight The maximum total weight of the entries to keep
+   */
+  public BoundedCache(Loader<K,V> loader, int maxEntries, long maxWeight){
+    if(maxEntries < 0 || maxWeight < 0){ throw new IllegalArgumentException("Cache bounds must be nonnegative"); }
+    this.loader = loader;
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * Get the value for a key, loading it if it is not cached.
+   * @param key The key to look up
+   * @return The cached or freshly loaded value
+   */
+  public V get(K key){
+    //--Check Cache
+    synchronized(this){
+      V cached = cache.get(key);
+      if(cached != null){
+        hits += 1;
+        return cached;
+      }
+      misses += 1;
+    }
+    //--Load
+    V value = loader.load(key);
+    long weight = loader.weight(key, value);
+    //--Store
+    synchronized(this){
+      //(another thread may have loaded it in the meantime)
+      V cached = cache.get(key);
+      if(cached != null){ return cached; }
+      //(entries heavier than the cache are not stored)
+      if(maxEntries == 0 || weight > maxWeight){ return value; }
+      cache.put(key, value);
+      weights.put(key, weight);
+      totalWeight += weight;
+      //(evict least recently used)
+      Iterator<Map.Entry<K,V>> iter = cache.entrySet().iterator();
+      while(cache.size() > maxEntries || totalWeight > maxWeight){
+        K evicted = iter.next().getKey();
+        iter.remove();
+        totalWeight -= weights.remove(evicted);
+        evictions += 1;
+      }
+      return value;
+    }
+  }
+
+  /**
+   * Remove every entry from the cache; the hit and miss counts are kept.
+   */
+  public synchronized void clear(){
+    cache.clear();
+    weights.clear();
+    totalWeight = 0;
+  }
+
+  public synchronized int size(){ return cache.size(); }
+  public synchronized long weight(){ return totalWeight; }
+  public synchronized long hits(){ return hits; }
+  public synchronized long misses(){ return misses; }
+  public synchronized long evictions(){ return evictions; }
+
+  @Override
+  public synchronized String toString(){
+    return "" + cache.size() + " entries (weight " + totalWeight + "); " +
+        hits + " hits, " + misses + " misses, " + evictions + " evictions";
+  }
+}
@@ -0,0 +1,91 @@
+package cs224n.util;
+
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs tasks in parallel inside a Redwood threaded environment, so that the tasks
+ * may log (e.g., a coreference system logging from runCoreference()).
+ * Redwood gives control of the log to one thread at a time, by thread id, and a
+ * thread gives it up for good by calling finishThread(); a pooled thread, which
+ * runs many tasks, would give it up after its first task. Every task therefore
+ * runs on a thread of its own, which calls finishThread() when the task is done;
+ * the messages of a task are printed together, as its thread gets control.
+ * At most <code>numThreads</code> tasks run at once.
+ */
+public class LoggedThreads {
+
+  private LoggedThreads(){ }
+
+  /**
+   * Run tasks in parallel, and wait for them to finish.
+   * If a task fails, no more tasks are started, the running tasks are waited for,
+   * and the first failure is thrown (wrapped in a RuntimeException if it is checked);
+   * the Redwood threaded environment is then left open, rather than hiding the failure.
+   * @param title The name of the Redwood thread group
+   * @param tasks The tasks to run
+   * @param numThreads The maximum number of tasks to run at once
+   * @return The result of each task, in the order of the tasks
+   */
+  public static <E> List<E> run(String title, List<? extends Callable<E>> tasks, int numThreads){
+    //--Variables
+    final Semaphore slots = new Semaphore(Math.max(1, numThreads));
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<FutureTask<E>> futures = new ArrayList<FutureTask<E>>(tasks.size());
+    List<Thread> threads = new ArrayList<Thread>(tasks.size());
+    //--Run Tasks
+    Redwood.startThreads(title);
+    try {
+      for(int i=0; i<tasks.size(); i++){
+        slots.acquire();
+        if(failure.get() != null){ break; }
+        final Callable<E> task = tasks.get(i);
+        FutureTask<E> future = new FutureTask<E>(new Callable<E>(){
+          public E call() throws Exception {
+            try {
+              return task.call();
+            } catch (Throwable t) {
+              failure.compareAndSet(null, t);
+              throw t;
+            } finally {
+              Redwood.finishThread();
+              slots.release();
+            }
+          }
+        });
+        Thread thread = new Thread(future, title + " " + i);
+        futures.add(future);
+        threads.add(thread);
+        thread.start();
+      }
+      for(Thread thread : threads){ thread.join(); }
+    } catch (InterruptedException e) {
+      for(Thread thread : threads){ thread.interrupt(); }
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    //--Check Failure
+    Throwable cause = failure.get();
+    if(cause instanceof RuntimeException){ throw (RuntimeException) cause; }
+    if(cause instanceof Error){ throw (Error) cause; }
+    if(cause != null){ throw new RuntimeException(cause); }
+    Redwood.endThreads(title);
+    //--Return
+    List<E> results = new ArrayList<E>(futures.size());
+    try {
+      for(FutureTask<E> future : futures){ results.add(future.get()); }
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());  // (not reached: failures are thrown above)
+    }
+    return results;
+  }
+}
@@ -0,0 +1,106 @@
+package cs224n.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * An iterator which loads the next few elements on background threads while the
+ * current element is being processed.
+ * At most <code>depth</code> elements are loaded ahead of the consumer, so that
+ * a slow consumer does not cause the whole input to be loaded into memory.
+ * Elements are returned in the order of the inputs.
+ * The iterator should be closed if it is not run to the end.
+ */
+public class PrefetchingIterator<E,V> implements Iterator<V> {
+  public static interface Loader<E,V>{
+    public V load(E input);
+  }
+
+  private final Iterator<E> inputs;
+  private final Loader<E,V> loader;
+  private final int depth;
+  private final ExecutorService executor;
+  private final ArrayDeque<Future<V>> queue = new ArrayDeque<Future<V>>();
+
+  /**
+   * Create a new prefetching iterator, and start loading the first elements.
+   * @param inputs The inputs to load, in order
+   * @param loader The function loading an input
+   * @param depth The number of elements to load ahead of the consumer;
+   *              if this is 0, elements are loaded on the consumer's thread
+   * @param numThreads The number of background threads to load elements with
+   */
+  public PrefetchingIterator(Iterator<E> inputs, Loader<E,V> loader, int depth, int numThreads){
+    if(depth < 0){ throw new IllegalArgumentException("Negative prefetch depth: " + depth); }
+    this.inputs = inputs;
+    this.loader = loader;
+    this.depth = depth;
+    if(depth > 0){
+      this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(depth, numThreads)), new ThreadFactory(){
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "prefetch");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    } else {
+      this.executor = null;
+    }
+    fill();
+  }
+
+  private void fill(){
+    while(executor != null && queue.size() < depth && inputs.hasNext()){
+      final E input = inputs.next();
+      queue.addLast(executor.submit(new Callable<V>(){
+        public V call() {
+          return loader.load(input);
+        }
+      }));
+    }
+  }
+
+  public boolean hasNext() {
+    return executor == null ? inputs.hasNext() : !queue.isEmpty();
+  }
+
+  public V next() {
+    //--Case: no prefetching
+    if(executor == null){
+      return loader.load(inputs.next());
+    }
+    //--Case: prefetching
+    if(queue.isEmpty()){ throw new NoSuchElementException(); }
+    V value;
+    try {
+      value = queue.removeFirst().get();
+    } catch (InterruptedException e) {
+      close();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      close();
+      if(e.getCause() instanceof RuntimeException){ throw (RuntimeException) e.getCause(); }
+      throw new RuntimeException(e.getCause());
+    }
+    //(start loading the next element)
+    fill();
+    if(queue.isEmpty()){ close(); }
+    return value;
+  }
+
+  public void remove() {
+    throw new UnsupportedOperationException("Cannot remove from a prefetching iterator");
+  }
+
+  /**
+   * Stop loading elements, and release the background threads.
+   */
+  public void close(){
+    if(executor != null){
+      executor.shutdownNow();
+      queue.clear();
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package cs224n.util;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Canonicalizes objects, as an {@link Interner} does, but without keeping the
+ * canonical objects alive: once nothing else refers to a canonical object, it is
+ * garbage collected, and the next equal object interned becomes canonical.
+ * Interning the strings of many documents therefore only holds on to the strings
+ * of the documents still in use.
+ * The interner is thread-safe; the table is split into stripes by hash, each with
+ * its own lock, so that threads interning different objects rarely wait on each other.
+ */
+public class WeakInterner<T> {
+  private static final int NUM_STRIPES = 16;
+
+  /** Canonical objects, weakly keyed by themselves (a strong value would keep the key alive) */
+  private final WeakHashMap<T,WeakReference<T>>[] stripes;
+
+  /**
+   * Create an empty interner.
+   */
+  @SuppressWarnings({"unchecked"})
+  public WeakInterner(){
+    stripes = (WeakHashMap<T,WeakReference<T>>[]) new WeakHashMap<?,?>[NUM_STRIPES];
+    for(int i=0; i<NUM_STRIPES; i++){
+      stripes[i] = new WeakHashMap<T,WeakReference<T>>();
+    }
+  }
+
+  /**
+   * Returns the canonical instance of an object; the object itself, if no equal
+   * object is currently interned.
+   * @param object The object to intern
+   * @return An object equal to the argument, and identical to every other result for an equal argument
+   * while that result is in use
+   */
+  public T intern(T object){
+    int hash = object.hashCode();
+    WeakHashMap<T,WeakReference<T>> stripe = stripes[(hash ^ (hash >>> 16)) & (NUM_STRIPES - 1)];
+    synchronized(stripe){
+      WeakReference<T> ref = stripe.get(object);
+      T canonical = ref == null ? null : ref.get();
+      if(canonical == null){
+        canonical = object;
+        stripe.put(canonical, new WeakReference<T>(canonical));
+      }
+      return canonical;
+    }
+  }
+
+  /**
+   * The number of canonical objects which have not (yet) been collected
+   * @return The number of interned objects
+   */
+  public int size(){
+    int size = 0;
+    for(WeakHashMap<T,WeakReference<T>> stripe : stripes){
+      synchronized(stripe){ size += stripe.size(); }
+    }
+    return size;
+  }
+}
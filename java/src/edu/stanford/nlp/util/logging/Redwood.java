@@ -1,8 +1,9 @@
 package edu.stanford.nlp.util.logging;
 
-import edu.stanford.nlp.io.IOUtils;
-
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.util.*;
@@ -1071,8 +1072,7 @@ public class Redwood {
 
     public FileHandler(String filename) {
       try {
-        // TODO oops -- JavaNLP dependency slipped in!
-        printWriter = IOUtils.getPrintWriter(filename);
+        printWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename), "UTF-8")));
       } catch (IOException e) {
         RuntimeException re = new RuntimeException(e);
         throw re;